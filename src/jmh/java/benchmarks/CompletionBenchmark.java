@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompletionBenchmark {
+    static final MethodHandle NEW_COMMAND_HASH = ShellClasses.constructor("CommandHash", String[].class);
+    static final MethodHandle NEW_COMPLETION_INDEX = ShellClasses.constructor("CompletionIndex",
+            ShellClasses.type("CommandHash"), Collection.class);
+    static final MethodHandle COMPLETE = ShellClasses.method("CompletionIndex", "complete",
+            ShellClasses.type("CompletionIndex$Completion"), String.class);
+    static final MethodHandle MATCHES = ShellClasses.method("CompletionIndex$Completion", "matches", List.class);
+    static final MethodHandle FIND_LONGEST_COMMON_PREFIX = ShellClasses.staticMethod("Input",
+            "findLongestCommonPrefix", String.class, List.class, String.class);
+
+    @Param({ "4000" })
+    int pathSize;
+    SyntheticPath path;
+    Object index;
+    List<String> gitMatches;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Throwable {
+        path = new SyntheticPath(8, pathSize / 8);
+        Object commandHash = NEW_COMMAND_HASH.invoke(path.dirs);
+        index = NEW_COMPLETION_INDEX.invoke(commandHash, Set.of("exit", "echo", "pwd", "cd", "type"));
+        gitMatches = (List<String>) MATCHES.invoke(COMPLETE.invoke(index, "git"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        path.delete();
+    }
+
+    @Benchmark
+    public Object completeManyMatches() throws Throwable {
+        return COMPLETE.invoke(index, "git");
+    }
+
+    @Benchmark
+    public Object completeSingleMatch() throws Throwable {
+        return COMPLETE.invoke(index, path.lastName());
+    }
+
+    @Benchmark
+    public Object completeNoMatch() throws Throwable {
+        return COMPLETE.invoke(index, "nosuchcommand");
+    }
+
+    @Benchmark
+    public Object longestCommonPrefix() throws Throwable {
+        return FIND_LONGEST_COMMON_PREFIX.invoke(gitMatches, "git");
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+    static final MethodHandle PARSE = ShellClasses.staticMethod("Input", "parse", ShellClasses.type("Node"),
+            String.class);
+    // Larger than the parse cache, so cycling through them never hits it.
+    static final int DISTINCT_LINES = 4096;
+
+    @Param({
+            "ls -la /tmp",
+            "echo 'single quoted' \"double \\\"escaped\\\"\" plain\\ space > 'out file.txt'",
+            "grep -n \"error: timeout\" /var/log/app.log 2>> errors.txt | sort -k2 | uniq -c > counts.txt",
+            "cat < input.txt | tr a-z A-Z | head -n 5 &",
+            "for host in $(cat hosts); do ping -c 1 \"$host\" > /dev/null && echo \"$host up\" || echo down; done"
+    })
+    String line;
+    String[] distinctLines;
+    int next;
+
+    @Setup
+    public void setUp() {
+        distinctLines = new String[DISTINCT_LINES];
+        for (int i = 0; i < DISTINCT_LINES; i++) {
+            distinctLines[i] = line.endsWith("&") || line.endsWith("done")
+                    ? line + "; echo " + i
+                    : line + " " + i;
+        }
+    }
+
+    @Benchmark
+    public Object parseCached() throws Throwable {
+        return PARSE.invoke(line);
+    }
+
+    @Benchmark
+    public Object parseUncached() throws Throwable {
+        next = (next + 1) % DISTINCT_LINES;
+        return PARSE.invoke(distinctLines[next]);
+    }
+}
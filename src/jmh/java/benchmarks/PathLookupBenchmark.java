@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Executable.findExecutablePath goes through the hash for the real PATH;
+// the synthetic PATH is looked up through a CommandHash of its own.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathLookupBenchmark {
+    static final MethodHandle FIND_EXECUTABLE_PATH = ShellClasses.staticMethod("Executable", "findExecutablePath",
+            String.class, ShellClasses.type("CommandHash"), String.class);
+    static final MethodHandle FOR_PATH = ShellClasses.staticMethod("CommandHash", "forPath",
+            ShellClasses.type("CommandHash"), String.class);
+    static final MethodHandle NEW_COMMAND_HASH = ShellClasses.constructor("CommandHash", String[].class);
+    static final MethodHandle FIND = ShellClasses.method("CommandHash", "find", String.class, String.class);
+    static final MethodHandle VALIDATE = ShellClasses.method("CommandHash", "validate", void.class);
+    SyntheticPath path;
+    Object realCommandHash;
+    Object commandHash;
+    String lastName;
+
+    @Setup
+    public void setUp() throws Throwable {
+        realCommandHash = FOR_PATH.invoke(System.getenv("PATH"));
+        VALIDATE.invoke(realCommandHash);
+        path = new SyntheticPath(8, 500);
+        commandHash = NEW_COMMAND_HASH.invoke(path.dirs);
+        lastName = path.lastName();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        path.delete();
+    }
+
+    @Benchmark
+    public Object findExecutablePathHit() throws Throwable {
+        return FIND_EXECUTABLE_PATH.invoke(realCommandHash, "sh");
+    }
+
+    @Benchmark
+    public Object findExecutablePathMiss() throws Throwable {
+        return FIND_EXECUTABLE_PATH.invoke(realCommandHash, "nosuchcommand");
+    }
+
+    @Benchmark
+    public Object syntheticPathHit() throws Throwable {
+        return FIND.invoke(commandHash, lastName);
+    }
+
+    @Benchmark
+    public Object syntheticPathMiss() throws Throwable {
+        return FIND.invoke(commandHash, "nosuchcommand");
+    }
+
+    // What every command line pays before lookups: a stat of each PATH directory.
+    @Benchmark
+    public void syntheticPathValidate() throws Throwable {
+        VALIDATE.invoke(commandHash);
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Running true (/bin/true, found through PATH) via the shell, against a bare
+// ProcessBuilder as the floor.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpawnBenchmark {
+    static final MethodHandle NEW_SHELL = ShellClasses.constructor("Shell");
+    static final MethodHandle NEW_EXECUTABLE = ShellClasses.constructor("Executable", String.class, Map.class,
+            ShellClasses.type("CommandHash"));
+    static final MethodHandle COMMAND_HASH = ShellClasses.getter("Shell", "commandHash",
+            ShellClasses.type("CommandHash"));
+    static final MethodHandle EXECUTE = ShellClasses.method("Executable", "execute",
+            ShellClasses.type("ExecutionResult"), ShellClasses.type("Shell"), List.class);
+    static final MethodHandle PROCESS_INPUT = ShellClasses.method("Shell", "processInput", void.class, String.class);
+    static final String TRUE = "true";
+    Object shell;
+
+    @Setup
+    public void setUp() throws Throwable {
+        shell = NEW_SHELL.invoke();
+    }
+
+    @Benchmark
+    public int processBuilder() throws Exception {
+        return new ProcessBuilder(TRUE).redirectInput(ProcessBuilder.Redirect.INHERIT).start().waitFor();
+    }
+
+    @Benchmark
+    public Object executableExecute() throws Throwable {
+        Object executable = NEW_EXECUTABLE.invoke(TRUE, Map.of(), COMMAND_HASH.invoke(shell));
+        return EXECUTE.invoke(executable, shell, List.of());
+    }
+
+    @Benchmark
+    public void processInput() throws Throwable {
+        PROCESS_INPUT.invoke(shell, "true");
+    }
+}
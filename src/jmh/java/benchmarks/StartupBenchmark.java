@@ -0,0 +1,128 @@
+package benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Time to first prompt: a fresh JVM running the shell interactively, from launch
+// until "$ " comes out of the terminal. script(1) provides the terminal, so this
+// needs util-linux, and its own start is part of every measurement. `archive`
+// compares a plain start with one from an AppCDS archive trained the way
+// your_program.sh trains it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+    static final String PROMPT = "$ ";
+    static final String TRAINING_COMMAND = "greet() { echo \"hello $1\" | cat; }; "
+            + "for name in a b; do greet \"$name\" > /dev/null; done; ls / | head -n 1 | wc -l > /dev/null";
+
+    @Param({ "none", "trained" })
+    String archive;
+    Path workDir;
+    List<String> command;
+    Process shell;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        workDir = Files.createTempDirectory("startup-benchmark");
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        // the shell runs in workDir, so the class path can't be relative
+        List<String> entries = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            entries.add(Path.of(entry).toAbsolutePath().toString());
+        }
+        String classPath = String.join(File.pathSeparator, entries);
+        List<String> shellCommand = new ArrayList<>(List.of(java, "-cp", classPath));
+        if (archive.equals("trained")) {
+            Path archiveFile = workDir.resolve("shell.jsa");
+            Process training = new ProcessBuilder(java, "-XX:ArchiveClassesAtExit=" + archiveFile,
+                    "-Xlog:cds=off", "-Xlog:cds+dynamic=off", "-cp", classPath, "Main", "-c", TRAINING_COMMAND)
+                    .redirectInput(ProcessBuilder.Redirect.from(new File("/dev/null")))
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (training.waitFor() != 0 || !Files.exists(archiveFile)) {
+                throw new IllegalStateException("The training run didn't produce " + archiveFile);
+            }
+            shellCommand.addAll(List.of("-XX:SharedArchiveFile=" + archiveFile, "-Xlog:cds=off",
+                    "-Xlog:cds+dynamic=off"));
+        }
+        shellCommand.add("Main");
+        command = List.of("script", "-qfec", quote(shellCommand), "/dev/null");
+    }
+
+    // Outside the measurement: the shell only has to be up, not gone.
+    @TearDown(Level.Invocation)
+    public void exitShell() throws IOException, InterruptedException {
+        if (shell == null) {
+            return;
+        }
+        if (shell.isAlive()) {
+            shell.getOutputStream().write("exit\r".getBytes(StandardCharsets.UTF_8));
+            shell.getOutputStream().flush();
+        }
+        if (!shell.waitFor(10, TimeUnit.SECONDS)) {
+            shell.destroyForcibly().waitFor();
+        }
+        shell = null;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void timeToFirstPrompt() throws IOException {
+        ProcessBuilder processBuilder = new ProcessBuilder(command).directory(workDir.toFile());
+        // keep the session's "exit" out of the real history
+        processBuilder.environment().put("HISTFILE", workDir.resolve("history").toString());
+        shell = processBuilder.start();
+        awaitPrompt(shell.getInputStream());
+    }
+
+    private static void awaitPrompt(InputStream output) throws IOException {
+        StringBuilder seen = new StringBuilder();
+        int b;
+        while ((b = output.read()) != -1) {
+            seen.append((char) b);
+            if (seen.toString().endsWith(PROMPT)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("The shell exited before its first prompt: " + seen);
+    }
+
+    private static String quote(List<String> words) {
+        StringBuilder quoted = new StringBuilder();
+        for (String word : words) {
+            quoted.append(quoted.length() > 0 ? " " : "").append('\'').append(word.replace("'", "'\\''")).append('\'');
+        }
+        return quoted.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+// A PATH of throwaway directories holding thousands of executables whose names
+// share a handful of prefixes, as real ones do.
+final class SyntheticPath {
+    static final String[] STEMS = { "git", "gcc", "grep", "python3", "perl", "pip", "docker", "kubectl", "node",
+            "npm", "java", "javac", "ssh", "scp", "make", "cmake", "xz", "zip", "tar", "sed" };
+    final Path root;
+    final String[] dirs;
+    final int fileCount;
+
+    SyntheticPath(int dirCount, int filesPerDir) throws IOException {
+        root = Files.createTempDirectory("synthetic-path");
+        dirs = new String[dirCount];
+        int n = 0;
+        for (int d = 0; d < dirCount; d++) {
+            Path dir = Files.createDirectory(root.resolve("bin" + d));
+            dirs[d] = dir.toString();
+            for (int f = 0; f < filesPerDir; f++, n++) {
+                Path file = dir.resolve(name(n));
+                Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxr-xr-x")));
+            }
+        }
+        fileCount = n;
+    }
+
+    // Exists only in the last directory, so a lookup has to get past all the others.
+    String lastName() {
+        return name(fileCount - 1);
+    }
+
+    static String name(int n) {
+        return STEMS[n % STEMS.length] + "-" + Integer.toString(n, 36);
+    }
+
+    void delete() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -1,12 +1,34 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public abstract class BuiltinCommand extends Program {
-    static Set<String> COMMANDS = new HashSet<>(Arrays.asList("exit", "echo", "pwd", "cd", "type"));
+    static Set<String> COMMANDS = new HashSet<>(Arrays.asList("exit", "echo", "pwd", "cd", "type", "hash", "jobs", "wait",
+            "fg", "parallel", "time", "export", "unset", "break", "continue", "return"));
+    static final Set<String> FAST_PATHS = Set.of("cat", "head", "tail", "wc");
 
     BuiltinCommand(String name, Map<RedirectType, File> redirects) {
         super(name, redirects);
@@ -19,7 +41,15 @@ public abstract class BuiltinCommand extends Program {
 
         @Override
         public ExecutionResult execute(Shell shell, List<String> args) throws ExitException {
-            throw new ExitException();
+            if (args.isEmpty()) {
+                throw new ExitException(shell.lastExitCode);
+            }
+            try {
+                throw new ExitException(Integer.parseInt(args.get(0)) & 0xFF);
+            } catch (NumberFormatException e) {
+                Printer.print(err, String.format("exit: %s: numeric argument required", args.get(0)));
+                throw new ExitException(2);
+            }
         }
     }
 
@@ -81,10 +111,12 @@ public abstract class BuiltinCommand extends Program {
         @Override
         public ExecutionResult execute(Shell shell, List<String> args) {
             for (String arg : args) {
-                if (isBuiltin(arg)) {
+                if (shell.functions.containsKey(arg)) {
+                    print(getOutputRedirect(), String.format("%s is a function", arg));
+                } else if (isBuiltin(arg)) {
                     print(getOutputRedirect(), String.format("%s is a shell builtin", arg));
                 } else {
-                    String path = Executable.findExecutablePath(arg);
+                    String path = Executable.findExecutablePath(shell.commandHash, arg);
                     if (path != null) {
                         print(getOutputRedirect(), String.format("%s is %s", arg, path));
                     } else {
@@ -97,69 +129,869 @@ public abstract class BuiltinCommand extends Program {
 
     }
 
-    public static BuiltinCommand fromName(String name) {
-        return fromName(name, null);
+    static class Hash extends BuiltinCommand {
+        Hash(Map<RedirectType, File> redirects) {
+            super("hash", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            if (args.isEmpty()) {
+                Map<String, Integer> remembered = shell.commandHash.remembered();
+                if (remembered.isEmpty()) {
+                    print(getOutputRedirect(), "hash: hash table empty");
+                    return new ExecutionResult();
+                }
+                print(getOutputRedirect(), "hits\tcommand");
+                remembered.forEach((command, hits) -> print(getOutputRedirect(),
+                        String.format("%4d\t%s", hits, shell.commandHash.find(command))));
+                return new ExecutionResult();
+            }
+
+            if (args.get(0).equals("-r")) {
+                shell.commandHash.reset();
+                return new ExecutionResult();
+            }
+
+            for (String arg : args) {
+                if (isBuiltin(arg)) {
+                    continue;
+                }
+                if (Executable.findExecutablePath(shell.commandHash, arg) == null) {
+                    return new ExecutionError(String.format("hash: %s: not found", arg));
+                }
+                shell.commandHash.remember(arg);
+            }
+            return new ExecutionResult();
+        }
     }
 
-    public static BuiltinCommand fromName(String name, Map<RedirectType, File> redirects) {
-        return switch (name) {
-            case "exit" -> new Exit(redirects);
-            case "echo" -> new Echo(redirects);
-            case "pwd" -> new PWD(redirects);
-            case "cd" -> new CD(redirects);
-            case "type" -> new Type(redirects);
-            default -> throw new IllegalArgumentException("Unknown command: " + name);
-        };
+    static class Jobs extends BuiltinCommand {
+        Jobs(Map<RedirectType, File> redirects) {
+            super("jobs", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            for (JobTable.Job job : shell.jobs.list()) {
+                print(getOutputRedirect(), shell.jobs.format(job, true));
+            }
+            return new ExecutionResult();
+        }
     }
 
-    public static boolean isBuiltin(String name) {
-        return COMMANDS.contains(name);
+    static class Wait extends BuiltinCommand {
+        Wait(Map<RedirectType, File> redirects) {
+            super("wait", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            List<JobTable.Job> jobs = new ArrayList<>();
+            if (args.isEmpty()) {
+                jobs.addAll(shell.jobs.list());
+            }
+            for (String arg : args) {
+                JobTable.Job job = shell.jobs.find(arg);
+                if (job == null) {
+                    return new ExecutionError(String.format("wait: %s: no such job", arg));
+                }
+                jobs.add(job);
+            }
+
+            int exitCode = 0;
+            for (JobTable.Job job : jobs) {
+                exitCode = job.await().exitCode;
+                shell.jobs.remove(job);
+            }
+            return args.isEmpty() ? new ExecutionResult() : new ExecutionResult(exitCode);
+        }
     }
 
-    public static List<String> autocomplete(String commandBeginning) {
-        return COMMANDS.stream()
-                .filter(command -> command.startsWith(commandBeginning))
-                .toList();
+    static class Fg extends BuiltinCommand {
+        Fg(Map<RedirectType, File> redirects) {
+            super("fg", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            if (args.size() > 1) {
+                return new ExecutionError("fg: too many arguments");
+            }
+            String spec = args.isEmpty() ? null : args.get(0);
+            JobTable.Job job = shell.jobs.find(spec);
+            if (job == null) {
+                return new ExecutionError(String.format("fg: %s: no such job", spec == null ? "current" : spec));
+            }
+            print(getOutputRedirect(), job.commandLine());
+            ExecutionResult result = job.await();
+            shell.jobs.remove(job);
+            return new ExecutionResult(result.exitCode);
+        }
     }
 
-    @Override
-    public void print(Redirect redirect, String data) {
-        switch (redirect.type) {
-            case OUTPUT -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data);
-                } else {
-                    Printer.print(System.out, data);
+    // parallel [-j N] command [args...]
+    // Runs the command once per input line, with {} standing for the line (or the line
+    // appended when there is no {}). At most N jobs run at a time, and each job's output
+    // is printed in one piece once it finishes. The exit status is the number of failed jobs.
+    static class Parallel extends BuiltinCommand {
+        static final String PLACEHOLDER = "{}";
+        static final int MAX_EXIT_CODE = 101;
+        final ReentrantLock outputLock = new ReentrantLock();
+
+        Parallel(Map<RedirectType, File> redirects) {
+            super("parallel", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            int concurrency = Runtime.getRuntime().availableProcessors();
+            List<String> template = args;
+            if (!args.isEmpty() && args.get(0).startsWith("-j")) {
+                Boolean isSeparateValue = args.get(0).equals("-j");
+                try {
+                    concurrency = Integer.parseInt(isSeparateValue ? args.get(1) : args.get(0).substring(2));
+                } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                    return new ExecutionError("parallel: -j: a positive number is required");
+                }
+                if (concurrency < 1) {
+                    return new ExecutionError("parallel: -j: a positive number is required");
                 }
+                template = args.subList(isSeparateValue ? 2 : 1, args.size());
+            }
+            if (template.isEmpty()) {
+                return new ExecutionError("parallel: no command given");
             }
 
-            case OUTPUT_APPEND -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data, true);
-                } else {
-                    Printer.print(System.out, data);
+            Semaphore slots = new Semaphore(concurrency);
+            AtomicInteger failedJobs = new AtomicInteger();
+            List<Thread> workers = new ArrayList<>();
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(openInput(shell)))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    List<String> jobArgs = expandTemplate(template, line);
+                    slots.acquire();
+                    workers.add(Thread.ofVirtual().start(() -> {
+                        try {
+                            if (runJob(shell, jobArgs) != 0) {
+                                failedJobs.incrementAndGet();
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    }));
+                }
+                for (Thread worker : workers) {
+                    worker.join();
                 }
+            } catch (FileNotFoundException e) {
+                return new ExecutionError(String.format("parallel: %s: No such file or directory", inputRedirect));
+            } catch (IOException e) {
+                return new ExecutionError(String.format("parallel: %s", e.getMessage()));
+            } catch (InterruptedException e) {
+                return new ExecutionError("parallel: interrupted");
             }
 
-            case ERROR -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data);
+            return new ExecutionResult(Math.min(failedJobs.get(), MAX_EXIT_CODE));
+        }
+
+        static List<String> expandTemplate(List<String> template, String line) {
+            List<String> expanded = new ArrayList<>(template.size() + 1);
+            Boolean hasPlaceholder = false;
+            for (String word : template) {
+                if (word.contains(PLACEHOLDER)) {
+                    hasPlaceholder = true;
+                    expanded.add(word.replace(PLACEHOLDER, line));
                 } else {
-                    Printer.print(System.err, data);
+                    expanded.add(word);
+                }
+            }
+            if (!hasPlaceholder) {
+                expanded.add(line);
+            }
+            return expanded;
+        }
+
+        private int runJob(Shell shell, List<String> jobArgs) {
+            ByteArrayOutputStream jobOutput = new ByteArrayOutputStream();
+            ByteArrayOutputStream jobError = new ByteArrayOutputStream();
+            PrintStream jobOut = new PrintStream(jobOutput);
+            PrintStream jobErr = new PrintStream(jobError);
+            int exitCode;
+
+            Program program = shell.createProgram(new Input(jobArgs.get(0), jobArgs.subList(1, jobArgs.size()),
+                    Map.of()), jobErr);
+            if (program == null) {
+                exitCode = 127;
+            } else {
+                program.out = jobOut;
+                program.err = jobErr;
+                program.in = InputStream.nullInputStream();
+                try {
+                    ExecutionResult result = program.execute(shell, jobArgs.subList(1, jobArgs.size()));
+                    if (result instanceof ExecutionError executionError) {
+                        program.print(program.getErrorRedirect(), executionError.message);
+                    }
+                    exitCode = result.exitCode;
+                } catch (UserInitiatedException e) {
+                    exitCode = e instanceof ExitException exitException ? exitException.exitCode : 1;
+                } finally {
+                    program.closeSinks();
+                }
+            }
+
+            jobOut.flush();
+            jobErr.flush();
+            outputLock.lock();
+            try {
+                jobOutput.writeTo(out);
+                jobError.writeTo(err);
+                out.flush();
+                err.flush();
+            } catch (IOException e) {
+                // the shell's own output is gone, there is nowhere left to report to
+            } finally {
+                outputLock.unlock();
+            }
+            return exitCode;
+        }
+    }
+
+    // Runs the rest of the line as a command and reports its timings to stderr.
+    // The redirects belong to the timed command, not to the report.
+    static class Time extends BuiltinCommand {
+        Time(Map<RedirectType, File> redirects) {
+            super("time", redirects);
+        }
+
+        @Override
+        ExecutionError openRedirects() {
+            return null;
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) throws UserInitiatedException {
+            CommandMetrics metrics = new CommandMetrics(String.join(" ", args), true, shell.isSharedProcess);
+            metrics.start();
+            int exitCode = args.isEmpty() ? 0 : run(shell, args);
+            metrics.stop(exitCode);
+            Printer.print(err, metrics.formatReport());
+            return new ExecutionResult(exitCode);
+        }
+
+        private int run(Shell shell, List<String> args) throws UserInitiatedException {
+            Program program = shell.createProgram(new Input(args.get(0), args.subList(1, args.size()), redirects), err);
+            if (program == null) {
+                return 127;
+            }
+            program.in = in;
+            program.heredoc = heredoc;
+            program.out = out;
+            program.err = err;
+            try {
+                ExecutionError redirectError = program.openRedirects();
+                if (redirectError != null) {
+                    Printer.print(err, redirectError.message);
+                    return redirectError.exitCode;
+                }
+                ExecutionResult result = program.execute(shell, args.subList(1, args.size()));
+                if (result instanceof ExecutionError executionError) {
+                    program.print(program.getErrorRedirect(), executionError.message);
+                }
+                return result.exitCode;
+            } finally {
+                program.closeSinks();
+            }
+        }
+    }
+
+    // NAME=value sets and exports a variable, NAME exports it as it is, and with no
+    // arguments the exported variables are listed.
+    static class Export extends BuiltinCommand {
+        Export(Map<RedirectType, File> redirects) {
+            super("export", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            if (args.isEmpty()) {
+                for (Map.Entry<String, String> variable : shell.environment.exportedVariables().entrySet()) {
+                    String value = variable.getValue().replace("\\", "\\\\").replace("\"", "\\\"");
+                    print(getOutputRedirect(), String.format("declare -x %s=\"%s\"", variable.getKey(), value));
+                }
+                return new ExecutionResult();
+            }
+
+            ExecutionResult result = new ExecutionResult();
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                String name = separator < 0 ? arg : arg.substring(0, separator);
+                if (!Input.NAME_PATTERN.matcher(name).matches()) {
+                    print(getErrorRedirect(), String.format("export: `%s': not a valid identifier", arg));
+                    result = new ExecutionResult(1);
+                    continue;
+                }
+                shell.setVariable(name, separator < 0 ? null : arg.substring(separator + 1), true);
+            }
+            return result;
+        }
+    }
+
+    static class Unset extends BuiltinCommand {
+        Unset(Map<RedirectType, File> redirects) {
+            super("unset", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            ExecutionResult result = new ExecutionResult();
+            for (String name : args) {
+                if (!Input.NAME_PATTERN.matcher(name).matches()) {
+                    print(getErrorRedirect(), String.format("unset: `%s': not a valid identifier", name));
+                    result = new ExecutionResult(1);
+                    continue;
+                }
+                shell.unsetVariable(name);
+            }
+            return result;
+        }
+    }
+
+    // `break n` and `continue n` act on the nth loop out from the innermost one.
+    static class LoopControl extends BuiltinCommand {
+        LoopControl(String name, Map<RedirectType, File> redirects) {
+            super(name, redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) throws LoopControlException {
+            if (shell.loopDepth == 0) {
+                return new ExecutionError(String.format("%s: only meaningful in a `for', `while', or `until' loop",
+                        name));
+            }
+            int levels = 1;
+            if (!args.isEmpty()) {
+                try {
+                    levels = Integer.parseInt(args.get(0));
+                } catch (NumberFormatException e) {
+                    return new ExecutionError(String.format("%s: %s: numeric argument required", name, args.get(0)));
+                }
+                if (levels < 1) {
+                    return new ExecutionError(String.format("%s: %s: loop count out of range", name, args.get(0)));
+                }
+            }
+            throw new LoopControlException(name.equals("break"), Math.min(levels, shell.loopDepth));
+        }
+    }
+
+    static class Return extends BuiltinCommand {
+        Return(Map<RedirectType, File> redirects) {
+            super("return", redirects);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) throws ReturnException {
+            if (shell.functionDepth == 0) {
+                return new ExecutionError("return: can only `return' from a function or sourced script");
+            }
+            if (args.isEmpty()) {
+                throw new ReturnException(shell.lastExitCode);
+            }
+            try {
+                throw new ReturnException(Integer.parseInt(args.get(0)) & 0xFF);
+            } catch (NumberFormatException e) {
+                return new ExecutionError(String.format("return: %s: numeric argument required", args.get(0)));
+            }
+        }
+    }
+
+    // Stand-ins for external commands that scripts run often enough to be worth doing
+    // in-process. Each is found through PATH like the command it stands for, so type
+    // and completion still show that command, and anything it doesn't support -
+    // options, or reading from the terminal - is handed over to it.
+    abstract static class FastPath extends BuiltinCommand {
+        static final int BUFFER_SIZE = 65536;
+        final Executable external;
+
+        FastPath(String name, Map<RedirectType, File> redirects, CommandHash commandHash) {
+            super(name, redirects);
+            external = new Executable(name, redirects, commandHash);
+        }
+
+        ExecutionResult runExternal(Shell shell, List<String> args) {
+            external.cwd = cwd;
+            external.in = in;
+            external.heredoc = heredoc;
+            external.out = out;
+            external.err = err;
+            external.environment = environment;
+            ExecutionResult result = external.execute(shell, args);
+            spawnNanos = external.spawnNanos;
+            return result;
+        }
+
+        // Raw bytes go straight to the redirect target's channel, once whatever was
+        // printed to it before has been written out.
+        WritableByteChannel openOutput() throws IOException {
+            Redirect redirect = getOutputRedirect();
+            if (redirect.file == null) {
+                return Channels.newChannel(out);
+            }
+            RedirectSink sink = getSink(redirect);
+            sink.flush();
+            return sink.channel;
+        }
+
+        // Writing to a pipe whose reader has gone doesn't throw through a PrintStream.
+        Boolean isOutputClosed() {
+            return getOutputRedirect().file == null && out.checkError();
+        }
+
+        void write(WritableByteChannel output, String text) throws IOException {
+            ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                output.write(bytes);
+            }
+        }
+
+        void transfer(FileChannel source, long from, WritableByteChannel output) throws IOException {
+            long size = source.size();
+            for (long position = from; position < size && !isOutputClosed();) {
+                long transferred = source.transferTo(position, size - position, output);
+                if (transferred == 0) {
+                    break;
                 }
+                position += transferred;
             }
+        }
 
-            case ERROR_APPEND -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data, true);
+        ReadableByteChannel openSource(Shell shell, String name) throws IOException {
+            return name.equals("-")
+                    ? Channels.newChannel(openInput(shell))
+                    : FileChannel.open(shell.resolvePath(new File(name)).toPath());
+        }
+
+        // Leaves the unsupported option, or null when all of them are understood.
+        // `-n N`, `-nN` and `-N` set the line count; everything else is a file.
+        String parseLineCount(List<String> args, long[] lineCount, List<String> files) {
+            Boolean isOptionsEnd = false;
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (isOptionsEnd || arg.equals("-") || !arg.startsWith("-")) {
+                    files.add(arg);
+                    continue;
+                }
+                String count;
+                if (arg.equals("--")) {
+                    isOptionsEnd = true;
+                    continue;
+                } else if (arg.equals("-n") && i + 1 < args.size()) {
+                    count = args.get(++i);
+                } else if (arg.startsWith("-n")) {
+                    count = arg.substring(2);
                 } else {
-                    Printer.print(System.err, data);
+                    count = arg.substring(1);
+                }
+                if (count.isEmpty() || !count.chars().allMatch(Character::isDigit)) {
+                    return arg;
+                }
+                try {
+                    lineCount[0] = Long.parseLong(count);
+                } catch (NumberFormatException e) {
+                    return arg;
                 }
             }
+            return null;
+        }
+
+        String header(String name, Boolean isFirst) {
+            return String.format("%s==> %s <==%n", isFirst ? "" : "\n", name.equals("-") ? "standard input" : name);
+        }
+
+        int reportFailure(String message) {
+            print(getErrorRedirect(), message);
+            return 1;
+        }
+    }
 
-            case INPUT -> throw new UnsupportedOperationException("Unimplemented case: " + redirect.type);
-            case INPUT_APPEND -> throw new UnsupportedOperationException("Unimplemented case: " + redirect.type);
-            default -> throw new IllegalArgumentException("Unexpected value: " + redirect.type);
+    static class Cat extends FastPath {
+        Cat(Map<RedirectType, File> redirects, CommandHash commandHash) {
+            super("cat", redirects, commandHash);
         }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            Boolean readsInput = args.isEmpty() || args.contains("-");
+            if ((readsInput && !hasOwnInput()) || args.stream().anyMatch(arg -> arg.startsWith("-") && !arg.equals("-"))) {
+                return runExternal(shell, args);
+            }
+
+            int exitCode = 0;
+            try {
+                WritableByteChannel output = openOutput();
+                for (String name : args.isEmpty() ? List.of("-") : args) {
+                    if (isOutputClosed()) {
+                        break;
+                    }
+                    if (!name.equals("-") && shell.resolvePath(new File(name)).isDirectory()) {
+                        exitCode = reportFailure(String.format("cat: %s: Is a directory", name));
+                        continue;
+                    }
+                    try (ReadableByteChannel source = openSource(shell, name)) {
+                        if (source instanceof FileChannel file) {
+                            transfer(file, 0, output);
+                        } else {
+                            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+                            while (source.read(buffer) != -1 && !isOutputClosed()) {
+                                buffer.flip();
+                                while (buffer.hasRemaining()) {
+                                    output.write(buffer);
+                                }
+                                buffer.clear();
+                            }
+                        }
+                    } catch (IOException e) {
+                        exitCode = reportFailure(String.format("cat: %s: %s", name, describeFailure(e)));
+                    }
+                }
+            } catch (IOException e) {
+                exitCode = reportFailure(String.format("cat: %s", describeFailure(e)));
+            }
+            out.flush();
+            return new ExecutionResult(exitCode);
+        }
+    }
+
+    static class Head extends FastPath {
+        static final long DEFAULT_LINE_COUNT = 10;
+
+        Head(Map<RedirectType, File> redirects, CommandHash commandHash) {
+            super("head", redirects, commandHash);
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            long[] lineCount = { DEFAULT_LINE_COUNT };
+            List<String> files = new ArrayList<>();
+            String unsupported = parseLineCount(args, lineCount, files);
+            if (unsupported != null || ((files.isEmpty() || files.contains("-")) && !hasOwnInput())) {
+                return runExternal(shell, args);
+            }
+            if (files.isEmpty()) {
+                files.add("-");
+            }
+
+            int exitCode = 0;
+            try {
+                WritableByteChannel output = openOutput();
+                for (int i = 0; i < files.size() && !isOutputClosed(); i++) {
+                    String name = files.get(i);
+                    if (!name.equals("-") && shell.resolvePath(new File(name)).isDirectory()) {
+                        exitCode = reportFailure(String.format("head: error reading '%s': Is a directory", name));
+                        continue;
+                    }
+                    try (ReadableByteChannel source = openSource(shell, name)) {
+                        if (files.size() > 1) {
+                            write(output, header(name, i == 0));
+                        }
+                        copyLines(source, output, lineCount[0]);
+                    } catch (IOException e) {
+                        exitCode = reportFailure(String.format("head: cannot open '%s' for reading: %s", name,
+                                describeFailure(e)));
+                    }
+                }
+            } catch (IOException e) {
+                exitCode = reportFailure(String.format("head: %s", describeFailure(e)));
+            }
+            out.flush();
+            return new ExecutionResult(exitCode);
+        }
+
+        private void copyLines(ReadableByteChannel source, WritableByteChannel output, long lineCount)
+                throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long lines = 0;
+            while (lines < lineCount && source.read(buffer) != -1) {
+                buffer.flip();
+                int end = buffer.limit();
+                for (int i = 0; i < buffer.limit() && lines < lineCount; i++) {
+                    if (buffer.get(i) == '\n' && ++lines == lineCount) {
+                        end = i + 1;
+                    }
+                }
+                buffer.limit(end);
+                while (buffer.hasRemaining()) {
+                    output.write(buffer);
+                }
+                buffer.clear();
+            }
+        }
+    }
+
+    static class Tail extends FastPath {
+        static final long DEFAULT_LINE_COUNT = 10;
+
+        Tail(Map<RedirectType, File> redirects, CommandHash commandHash) {
+            super("tail", redirects, commandHash);
+        }
+
+        // Only files are read in-process, as only they can be read from the end.
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            long[] lineCount = { DEFAULT_LINE_COUNT };
+            List<String> files = new ArrayList<>();
+            String unsupported = parseLineCount(args, lineCount, files);
+            if (unsupported != null || files.isEmpty() || files.contains("-")) {
+                return runExternal(shell, args);
+            }
+
+            int exitCode = 0;
+            try {
+                WritableByteChannel output = openOutput();
+                for (int i = 0; i < files.size() && !isOutputClosed(); i++) {
+                    String name = files.get(i);
+                    File file = shell.resolvePath(new File(name));
+                    if (file.isDirectory()) {
+                        exitCode = reportFailure(String.format("tail: error reading '%s': Is a directory", name));
+                        continue;
+                    }
+                    try (FileChannel source = FileChannel.open(file.toPath())) {
+                        if (files.size() > 1) {
+                            write(output, header(name, i == 0));
+                        }
+                        transfer(source, findLastLines(source, lineCount[0]), output);
+                    } catch (IOException e) {
+                        exitCode = reportFailure(String.format("tail: cannot open '%s' for reading: %s", name,
+                                describeFailure(e)));
+                    }
+                }
+            } catch (IOException e) {
+                exitCode = reportFailure(String.format("tail: %s", describeFailure(e)));
+            }
+            out.flush();
+            return new ExecutionResult(exitCode);
+        }
+
+        // Reads backwards a block at a time until enough line breaks have gone by.
+        // A line break at the very end closes the last line rather than starting one.
+        private static long findLastLines(FileChannel source, long lineCount) throws IOException {
+            long size = source.size();
+            if (lineCount == 0) {
+                return size;
+            }
+            ByteBuffer block = ByteBuffer.allocate(BUFFER_SIZE);
+            long lines = 0;
+            long blockEnd = size;
+            while (blockEnd > 0) {
+                long blockStart = Math.max(0, blockEnd - BUFFER_SIZE);
+                block.clear().limit((int) (blockEnd - blockStart));
+                while (block.hasRemaining() && source.read(block, blockStart + block.position()) != -1) {
+                }
+                for (int i = block.position() - 1; i >= 0; i--) {
+                    long offset = blockStart + i;
+                    if (block.get(i) == '\n' && offset != size - 1 && ++lines == lineCount) {
+                        return offset + 1;
+                    }
+                }
+                blockEnd = blockStart;
+            }
+            return 0;
+        }
+    }
+
+    static class Wc extends FastPath {
+        static final int MAPPED_WINDOW_SIZE = 64 << 20;
+        static final int MINIMUM_STREAM_WIDTH = 7;
+
+        Wc(Map<RedirectType, File> redirects, CommandHash commandHash) {
+            super("wc", redirects, commandHash);
+        }
+
+        static class Counts {
+            long lines = 0;
+            long words = 0;
+            long bytes = 0;
+            Boolean isInWord = false;
+
+            void add(byte[] chunk, int length) {
+                bytes += length;
+                for (int i = 0; i < length; i++) {
+                    byte b = chunk[i];
+                    Boolean isSpace = b == ' ' || (b >= '\t' && b <= '\r');
+                    if (b == '\n') {
+                        lines++;
+                    }
+                    if (!isSpace && !isInWord) {
+                        words++;
+                    }
+                    isInWord = !isSpace;
+                }
+            }
+        }
+
+        @Override
+        public ExecutionResult execute(Shell shell, List<String> args) {
+            Boolean[] shown = { false, false, false };
+            List<String> files = new ArrayList<>();
+            for (String arg : args) {
+                if (arg.equals("-") || !arg.startsWith("-")) {
+                    files.add(arg);
+                    continue;
+                }
+                for (char option : arg.substring(1).toCharArray()) {
+                    int column = "lwc".indexOf(option);
+                    if (column < 0) {
+                        return runExternal(shell, args);
+                    }
+                    shown[column] = true;
+                }
+            }
+            if ((files.isEmpty() || files.contains("-")) && !hasOwnInput()) {
+                return runExternal(shell, args);
+            }
+            if (!shown[0] && !shown[1] && !shown[2]) {
+                Arrays.fill(shown, true);
+            }
+
+            int exitCode = 0;
+            List<String> names = files.isEmpty() ? Collections.singletonList(null) : files;
+            List<long[]> results = new ArrayList<>();
+            List<String> resultNames = new ArrayList<>();
+            long regularTotal = 0;
+            Boolean hasStream = false;
+            for (String name : names) {
+                Counts counts = new Counts();
+                try {
+                    File file = name == null || name.equals("-") ? redirectedInputFile(shell)
+                            : shell.resolvePath(new File(name));
+                    if (file != null && file.isDirectory()) {
+                        exitCode = reportFailure(String.format("wc: %s: Is a directory", name));
+                        continue;
+                    }
+                    if (file != null && file.isFile()) {
+                        countMapped(file, counts);
+                        regularTotal += counts.bytes;
+                    } else {
+                        try (InputStream source = file != null ? new FileInputStream(file) : openInput(shell)) {
+                            byte[] chunk = new byte[BUFFER_SIZE];
+                            for (int read; (read = source.read(chunk)) != -1;) {
+                                counts.add(chunk, read);
+                            }
+                        }
+                        hasStream = true;
+                    }
+                    results.add(new long[] { counts.lines, counts.words, counts.bytes });
+                    resultNames.add(name);
+                } catch (IOException e) {
+                    String reason = e instanceof FileNotFoundException ? "No such file or directory" : describeFailure(e);
+                    exitCode = reportFailure(name != null
+                            ? String.format("wc: %s: %s", name, reason)
+                            : String.format("%s: %s", inputRedirect, reason));
+                }
+            }
+
+            if (results.size() > 1 || (files.size() > 1 && !results.isEmpty())) {
+                long[] total = new long[3];
+                for (long[] result : results) {
+                    for (int i = 0; i < 3; i++) {
+                        total[i] += result[i];
+                    }
+                }
+                results.add(total);
+                resultNames.add("total");
+            }
+
+            // as wide as the total size of the files, but left alone for a single number
+            int shownCount = (shown[0] ? 1 : 0) + (shown[1] ? 1 : 0) + (shown[2] ? 1 : 0);
+            int width = Long.toString(regularTotal).length();
+            if (hasStream) {
+                width = Math.max(width, MINIMUM_STREAM_WIDTH);
+            }
+            if (names.size() == 1 && shownCount == 1) {
+                width = 1;
+            }
+            for (int r = 0; r < results.size(); r++) {
+                StringBuilder line = new StringBuilder();
+                for (int i = 0; i < 3; i++) {
+                    if (shown[i]) {
+                        line.append(line.isEmpty() ? "" : " ").append(String.format("%" + width + "d", results.get(r)[i]));
+                    }
+                }
+                if (resultNames.get(r) != null) {
+                    line.append(' ').append(resultNames.get(r));
+                }
+                print(getOutputRedirect(), line.toString());
+            }
+            return new ExecutionResult(exitCode);
+        }
+
+        // Standard input redirected from a file is counted like that file.
+        private File redirectedInputFile(Shell shell) {
+            return in == null && heredoc == null && inputRedirect != null ? shell.resolvePath(inputRedirect) : null;
+        }
+
+        // Maps the file a window at a time and counts the mapped bytes in chunks.
+        private static void countMapped(File file, Counts counts) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                long size = channel.size();
+                byte[] chunk = new byte[BUFFER_SIZE];
+                for (long windowStart = 0; windowStart < size; windowStart += MAPPED_WINDOW_SIZE) {
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(MAPPED_WINDOW_SIZE, size - windowStart));
+                    while (window.hasRemaining()) {
+                        int length = Math.min(chunk.length, window.remaining());
+                        window.get(chunk, 0, length);
+                        counts.add(chunk, length);
+                    }
+                }
+            }
+        }
+    }
+
+    static BuiltinCommand fastPathFromName(String name, Map<RedirectType, File> redirects,
+            CommandHash commandHash) {
+        return switch (name) {
+            case "cat" -> new Cat(redirects, commandHash);
+            case "head" -> new Head(redirects, commandHash);
+            case "tail" -> new Tail(redirects, commandHash);
+            case "wc" -> new Wc(redirects, commandHash);
+            default -> throw new IllegalArgumentException("Unknown command: " + name);
+        };
+    }
+
+    static boolean hasFastPath(String name) {
+        return FAST_PATHS.contains(name);
+    }
+
+    public static BuiltinCommand fromName(String name) {
+        return fromName(name, null);
+    }
+
+    public static BuiltinCommand fromName(String name, Map<RedirectType, File> redirects) {
+        return switch (name) {
+            case "exit" -> new Exit(redirects);
+            case "echo" -> new Echo(redirects);
+            case "pwd" -> new PWD(redirects);
+            case "cd" -> new CD(redirects);
+            case "type" -> new Type(redirects);
+            case "hash" -> new Hash(redirects);
+            case "jobs" -> new Jobs(redirects);
+            case "wait" -> new Wait(redirects);
+            case "fg" -> new Fg(redirects);
+            case "parallel" -> new Parallel(redirects);
+            case "time" -> new Time(redirects);
+            case "export" -> new Export(redirects);
+            case "unset" -> new Unset(redirects);
+            case "break", "continue" -> new LoopControl(name, redirects);
+            case "return" -> new Return(redirects);
+            default -> throw new IllegalArgumentException("Unknown command: " + name);
+        };
+    }
+
+    public static boolean isBuiltin(String name) {
+        return COMMANDS.contains(name);
     }
 }
@@ -0,0 +1,42 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Recorded when the JVM runs with Flight Recorder, e.g. -XX:StartFlightRecording.
+@Name("shell.Command")
+@Label("Shell Command")
+@Category("Shell")
+@Description("A command line run by the shell")
+class CommandEvent extends jdk.jfr.Event {
+    @Label("Command Line")
+    String commandLine;
+
+    @Label("Exit Code")
+    int exitCode;
+
+    @Label("Parse Time")
+    @Timespan
+    long parseNanos;
+
+    @Label("PATH Resolution Time")
+    @Timespan
+    long resolveNanos;
+
+    @Label("Spawn Time")
+    @Timespan
+    long spawnNanos;
+
+    @Label("Wall Time")
+    @Timespan
+    long wallNanos;
+
+    @Label("Child User Time")
+    @Timespan
+    long userNanos;
+
+    @Label("Child System Time")
+    @Timespan
+    long systemNanos;
+}
@@ -0,0 +1,160 @@
+import java.io.File;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// The commands in one PATH's directories. Shells with the same PATH share a hash,
+// so a session's PATH only affects that session's lookups, and each PATH is still
+// listed once however many sessions use it. A hash is only weakly held here: once
+// no shell uses its PATH any more, it's collected and its entry dropped.
+class CommandHash {
+    static final Map<String, PathEntry> BY_PATH = new ConcurrentHashMap<>();
+    static final ReferenceQueue<CommandHash> COLLECTED = new ReferenceQueue<>();
+    final String[] dirs;
+    // whether these are the directories ProcessBuilder itself searches, the JVM's own PATH
+    final Boolean isProcessPath;
+    final long[] modifiedTimes;
+    // one per directory, null until it has been listed
+    final List<Set<String>> listings;
+    final Map<String, String> table = new HashMap<>();
+    final Map<String, Integer> hits = new LinkedHashMap<>();
+    final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // read without the lock by lookups that would rather not wait for a build
+    volatile boolean isBuilt = false;
+
+    interface Listener {
+        void commandsChanged(Set<String> added, Set<String> removed);
+    }
+
+    static class PathEntry extends WeakReference<CommandHash> {
+        final String path;
+
+        PathEntry(String path, CommandHash commandHash) {
+            super(commandHash, COLLECTED);
+            this.path = path;
+        }
+    }
+
+    CommandHash(String[] dirs) {
+        this.dirs = dirs;
+        this.isProcessPath = Arrays.equals(dirs, splitPath(System.getenv("PATH")));
+        this.modifiedTimes = new long[dirs.length];
+        this.listings = new ArrayList<>(Collections.nCopies(dirs.length, null));
+    }
+
+    static CommandHash forPath(String path) {
+        for (Reference<? extends CommandHash> collected; (collected = COLLECTED.poll()) != null;) {
+            PathEntry entry = (PathEntry) collected;
+            BY_PATH.remove(entry.path, entry);
+        }
+        String key = path != null ? path : "";
+        PathEntry entry = BY_PATH.get(key);
+        CommandHash commandHash = entry != null ? entry.get() : null;
+        if (commandHash != null) {
+            return commandHash;
+        }
+        CommandHash created = new CommandHash(splitPath(key));
+        while (true) {
+            entry = BY_PATH.compute(key, (p, existing) -> existing != null && existing.get() != null
+                    ? existing
+                    : new PathEntry(p, created));
+            // another shell's hash may be collected between the two reads; ours can't be
+            commandHash = entry.get();
+            if (commandHash != null) {
+                return commandHash;
+            }
+        }
+    }
+
+    static String[] splitPath(String path) {
+        return path != null && !path.isEmpty() ? path.split(":") : new String[] {};
+    }
+
+    synchronized String find(String name) {
+        if (!isBuilt) {
+            validate();
+        }
+        return table.get(name);
+    }
+
+    synchronized Set<String> names() {
+        if (!isBuilt) {
+            validate();
+        }
+        return new HashSet<>(table.keySet());
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    synchronized void remember(String name) {
+        hits.merge(name, 1, Integer::sum);
+    }
+
+    synchronized Map<String, Integer> remembered() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(hits));
+    }
+
+    synchronized void reset() {
+        hits.clear();
+        Arrays.fill(modifiedTimes, 0);
+        isBuilt = false;
+    }
+
+    // A directory's mtime changes whenever an entry is added, removed or renamed,
+    // so only the directories whose mtime moved need to be listed again.
+    synchronized void validate() {
+        boolean isChanged = !isBuilt;
+        for (int i = 0; i < dirs.length; i++) {
+            long modifiedTime = new File(dirs[i]).lastModified();
+            if (isBuilt && listings.get(i) != null && modifiedTime == modifiedTimes[i]) {
+                continue;
+            }
+            String[] names = new File(dirs[i]).list();
+            listings.set(i, names != null ? new HashSet<>(Arrays.asList(names)) : Set.of());
+            modifiedTimes[i] = modifiedTime;
+            isChanged = true;
+        }
+
+        if (isChanged) {
+            rebuildTable();
+        }
+        isBuilt = true;
+    }
+
+    private void rebuildTable() {
+        Set<String> previousNames = new HashSet<>(table.keySet());
+        table.clear();
+        for (int i = dirs.length - 1; i >= 0; i--) {
+            for (String name : listings.get(i)) {
+                table.put(name, new File(dirs[i], name).getAbsolutePath());
+            }
+        }
+        hits.keySet().retainAll(table.keySet());
+
+        if (!listeners.isEmpty()) {
+            Set<String> added = new HashSet<>(table.keySet());
+            added.removeAll(previousNames);
+            previousNames.removeAll(table.keySet());
+            for (Listener listener : listeners) {
+                listener.commandsChanged(added, previousNames);
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+import java.util.List;
+
+public class CommandLine {
+    public final List<Input> stages;
+    public final Boolean isBackground;
+
+    CommandLine(List<Input> stages, Boolean isBackground) {
+        this.stages = stages;
+        this.isBackground = isBackground;
+    }
+}
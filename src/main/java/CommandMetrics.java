@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+// Where the time of one command line went. Child CPU time is what the kernel has
+// added to the shell's totals for reaped children while the command ran: a child's
+// own accounting (ProcessHandle.Info) is gone by the time its exit is observed.
+// Those totals belong to the whole process, so they only mean something when the
+// process runs one shell at a time; under the daemon they're left out.
+class CommandMetrics {
+    static final Path PROC_SELF_STAT = Path.of("/proc/self/stat");
+    static final Path PROC_SELF_AUXV = Path.of("/proc/self/auxv");
+    // AT_CLKTCK, the kernel's clock ticks per second, as sysconf(_SC_CLK_TCK) has it
+    static final long AUXV_CLOCK_TICKS = 17;
+    static final long DEFAULT_CLOCK_TICKS = 100;
+    static final int CHILD_USER_TIME_FIELD = 13;
+    static final int CHILD_SYSTEM_TIME_FIELD = 14;
+    final String commandLine;
+    // only when something reports the CPU times, as they cost two reads of /proc
+    final Boolean isCpuMeasured;
+    long parseNanos;
+    long resolveNanos;
+    long spawnNanos;
+    long wallNanos;
+    long userNanos;
+    long systemNanos;
+    int exitCode;
+    private long startedAt;
+    private long[] childTimesAtStart;
+    private final CommandEvent event = new CommandEvent();
+
+    // `isReported` is for a report of its own, as `time` and the metrics log make;
+    // a Flight Recorder recording taking the event counts as one too.
+    CommandMetrics(String commandLine, Boolean isReported, Boolean isSharedProcess) {
+        this.commandLine = commandLine;
+        this.isCpuMeasured = !isSharedProcess && (isReported || event.isEnabled());
+    }
+
+    void start() {
+        event.begin();
+        startedAt = System.nanoTime();
+        if (isCpuMeasured) {
+            childTimesAtStart = readChildTimes();
+        }
+    }
+
+    void stop(int exitCode) {
+        this.exitCode = exitCode;
+        wallNanos = System.nanoTime() - startedAt;
+        if (!isCpuMeasured) {
+            return;
+        }
+        long[] childTimes = readChildTimes();
+        if (childTimes != null && childTimesAtStart != null) {
+            userNanos = (childTimes[0] - childTimesAtStart[0]) * 1_000_000_000L / ClockTicks.PER_SECOND;
+            systemNanos = (childTimes[1] - childTimesAtStart[1]) * 1_000_000_000L / ClockTicks.PER_SECOND;
+        }
+    }
+
+    // Looked up the first time CPU times are measured.
+    private static class ClockTicks {
+        static final long PER_SECOND = readClockTicks();
+    }
+
+    // The auxiliary vector is pairs of native words, the first of each its type.
+    static long readClockTicks() {
+        try {
+            ByteBuffer auxv = ByteBuffer.wrap(Files.readAllBytes(PROC_SELF_AUXV)).order(ByteOrder.nativeOrder());
+            Boolean is32Bit = "32".equals(System.getProperty("sun.arch.data.model"));
+            int wordSize = is32Bit ? Integer.BYTES : Long.BYTES;
+            while (auxv.remaining() >= 2 * wordSize) {
+                long type = is32Bit ? auxv.getInt() : auxv.getLong();
+                long value = is32Bit ? auxv.getInt() : auxv.getLong();
+                if (type == AUXV_CLOCK_TICKS && value > 0) {
+                    return value;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // no procfs: the value Linux has used everywhere for a long time
+        }
+        return DEFAULT_CLOCK_TICKS;
+    }
+
+    // Fields after the parenthesised command name, which may itself contain spaces;
+    // cutime and cstime are the 16th and 17th fields of the whole line.
+    private static long[] readChildTimes() {
+        try {
+            String stat = Files.readString(PROC_SELF_STAT);
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return new long[] {
+                    Long.parseLong(fields[CHILD_USER_TIME_FIELD]),
+                    Long.parseLong(fields[CHILD_SYSTEM_TIME_FIELD]) };
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    String formatReport() {
+        if (!isCpuMeasured) {
+            return String.format("%nreal\t%s", formatDuration(wallNanos));
+        }
+        return String.format("%nreal\t%s%nuser\t%s%nsys\t%s",
+                formatDuration(wallNanos), formatDuration(userNanos), formatDuration(systemNanos));
+    }
+
+    private static String formatDuration(long nanos) {
+        long millis = nanos / 1_000_000;
+        return String.format("%dm%d.%03ds", millis / 60_000, millis / 1000 % 60, millis % 1000);
+    }
+
+    // Without CPU times, user_us and sys_us are left out rather than logged as 0.
+    String formatLogLine() {
+        String cpuFields = isCpuMeasured
+                ? String.format(" user_us=%d sys_us=%d", userNanos / 1000, systemNanos / 1000)
+                : "";
+        return String.format("%s exit=%d parse_us=%d resolve_us=%d spawn_us=%d wall_us=%d%s cmd=\"%s\"%n",
+                Instant.now(), exitCode, parseNanos / 1000, resolveNanos / 1000, spawnNanos / 1000,
+                wallNanos / 1000, cpuFields,
+                commandLine.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"));
+    }
+
+    // Each line goes out in a single append, so shells sharing a log don't interleave.
+    void appendTo(File log) throws IOException {
+        Files.write(log.toPath(), formatLogLine().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    void emitEvent() {
+        event.end();
+        if (event.shouldCommit()) {
+            event.commandLine = commandLine;
+            event.exitCode = exitCode;
+            event.parseNanos = parseNanos;
+            event.resolveNanos = resolveNanos;
+            event.spawnNanos = spawnNanos;
+            event.wallNanos = wallNanos;
+            event.userNanos = userNanos;
+            event.systemNanos = systemNanos;
+            event.commit();
+        }
+    }
+}
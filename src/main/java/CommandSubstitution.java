@@ -0,0 +1,142 @@
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Fills variables and `$(...)` into words. The command of a `$(...)` runs in a
+// copy of the shell while its output is collected, so builtins write straight
+// into the buffer and external output is copied in as it's produced.
+class CommandSubstitution {
+    static final String CAPTURE_LIMIT_VARIABLE = "SHELL_CAPTURE_LIMIT";
+    static final int DEFAULT_CAPTURE_LIMIT = 16 << 20;
+
+    // Collects up to `limit` bytes, growing as needed. Anything past the limit is
+    // counted but dropped, so the command never blocks on a full buffer.
+    static class Capture extends OutputStream {
+        static final int INITIAL_SIZE = 256;
+        final int limit;
+        byte[] bytes = new byte[INITIAL_SIZE];
+        int size = 0;
+        long dropped = 0;
+
+        Capture(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            int kept = Math.min(len, limit - size);
+            if (size + kept > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(limit, Math.max(size + kept, 2L * bytes.length)));
+            }
+            System.arraycopy(b, off, bytes, size, kept);
+            size += kept;
+            dropped += len - kept;
+        }
+
+        // The output as it's substituted, without its trailing newlines.
+        synchronized String toTrimmedString() {
+            int end = size;
+            while (end > 0 && bytes[end - 1] == '\n') {
+                end--;
+            }
+            return new String(bytes, 0, end, StandardCharsets.UTF_8);
+        }
+    }
+
+    static int readLimit(String value) {
+        try {
+            int limit = value != null ? Integer.parseInt(value.strip()) : DEFAULT_CAPTURE_LIMIT;
+            return limit > 0 ? limit : DEFAULT_CAPTURE_LIMIT;
+        } catch (NumberFormatException e) {
+            return DEFAULT_CAPTURE_LIMIT;
+        }
+    }
+
+    static String valueOf(Shell shell, Lexer.Substitution substitution) {
+        return substitution.variable() != null
+                ? shell.getVariable(substitution.variable())
+                : shell.captureOutput(substitution.command());
+    }
+
+    // An offset outside the text, or before one already filled in, doesn't belong
+    // to the text; such a substitution is left out rather than failing the word.
+    static Boolean isInText(Lexer.Substitution substitution, String text, int copied) {
+        return substitution.offset() >= copied && substitution.offset() <= text.length();
+    }
+
+    // The word with every substitution filled in, as a single word.
+    static String expand(Shell shell, String text, List<Lexer.Substitution> substitutions) {
+        StringBuilder expanded = new StringBuilder();
+        int copied = 0;
+        for (Lexer.Substitution substitution : substitutions) {
+            if (!isInText(substitution, text, copied)) {
+                continue;
+            }
+            expanded.append(text, copied, substitution.offset()).append(valueOf(shell, substitution));
+            copied = substitution.offset();
+        }
+        return expanded.append(text, copied, text.length()).toString();
+    }
+
+    // The words the word becomes: output outside double quotes is split at
+    // whitespace, and a word made up of nothing but such output may vanish.
+    static List<String> expandFields(Shell shell, String text, List<Lexer.Substitution> substitutions) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        Boolean isFieldStarted = false;
+        int copied = 0;
+        for (Lexer.Substitution substitution : substitutions) {
+            if (!isInText(substitution, text, copied)) {
+                continue;
+            }
+            field.append(text, copied, substitution.offset());
+            isFieldStarted |= substitution.offset() > copied;
+            copied = substitution.offset();
+
+            // "$@" is a word per positional parameter
+            if (substitution.isQuoted() && "@".equals(substitution.variable())) {
+                for (int k = 0; k < shell.positionalArgs.size(); k++) {
+                    if (k > 0) {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                    }
+                    field.append(shell.positionalArgs.get(k));
+                    isFieldStarted = true;
+                }
+                continue;
+            }
+            String output = valueOf(shell, substitution);
+            if (substitution.isQuoted()) {
+                field.append(output);
+                isFieldStarted = true;
+                continue;
+            }
+            int i = 0;
+            while (i < output.length()) {
+                if (Character.isWhitespace(output.charAt(i))) {
+                    if (isFieldStarted) {
+                        fields.add(field.toString());
+                        field.setLength(0);
+                        isFieldStarted = false;
+                    }
+                    i++;
+                    continue;
+                }
+                field.append(output.charAt(i++));
+                isFieldStarted = true;
+            }
+        }
+        field.append(text, copied, text.length());
+        if (isFieldStarted || copied < text.length()) {
+            fields.add(field.toString());
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+class CompletionIndex implements CommandHash.Listener {
+    final CommandHash commandHash;
+    final Collection<String> builtins;
+    final NavigableSet<String> names = new ConcurrentSkipListSet<>();
+    CompletableFuture<Void> ready;
+
+    record Completion(List<String> matches, String commonPrefix) {
+    }
+
+    CompletionIndex(CommandHash commandHash, Collection<String> builtins) {
+        this.commandHash = commandHash;
+        this.builtins = builtins;
+    }
+
+    synchronized CompletableFuture<Void> buildInBackground() {
+        if (ready == null) {
+            ready = new CompletableFuture<>();
+            commandHash.addListener(this);
+            Thread.ofVirtual().start(() -> {
+                try {
+                    names.addAll(builtins);
+                    commandHash.validate();
+                    names.addAll(commandHash.names());
+                    ready.complete(null);
+                } catch (RuntimeException e) {
+                    ready.completeExceptionally(e);
+                }
+            });
+        }
+        return ready;
+    }
+
+    // For an index that's been replaced: the hash stops reporting changes to it.
+    synchronized void close() {
+        commandHash.removeListener(this);
+    }
+
+    Completion complete(String prefix) {
+        buildInBackground().join();
+        commandHash.validate();
+
+        List<String> matches = new ArrayList<>(names.subSet(prefix, true, prefix + Character.MAX_VALUE, false));
+        if (matches.isEmpty()) {
+            return new Completion(matches, prefix);
+        }
+        // the matches are sorted, so whatever the first and the last one share, all of them share
+        String commonPrefix = Input.findLongestCommonPrefix(List.of(matches.getFirst(), matches.getLast()), prefix);
+        return new Completion(matches, commonPrefix);
+    }
+
+    @Override
+    public void commandsChanged(Set<String> added, Set<String> removed) {
+        names.addAll(added);
+        for (String name : removed) {
+            if (!builtins.contains(name)) {
+                names.remove(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// The shell's variables and which of them are exported. An Environment never
+// changes: setting or unsetting a variable gives a new one, so shells, subshells
+// and the programs they start all share it by reference. What a child process gets
+// is worked out once per Environment, as the difference from the JVM's own
+// environment, which is what ProcessBuilder starts from.
+final class Environment {
+    final Map<String, String> variables;
+    final Set<String> exported;
+    private ProcessChanges processChanges;
+
+    // `set` holds the variables to add or overwrite, `removed` the names to drop.
+    record ProcessChanges(Map<String, String> set, Set<String> removed) {
+        Boolean isEmpty() {
+            return set.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private Environment(Map<String, String> variables, Set<String> exported) {
+        this.variables = variables;
+        this.exported = exported;
+    }
+
+    static Environment fromSystem() {
+        return of(System.getenv());
+    }
+
+    // Every one of `variables` is exported.
+    static Environment of(Map<String, String> variables) {
+        return new Environment(Map.copyOf(variables), Set.copyOf(variables.keySet()));
+    }
+
+    String get(String name) {
+        return variables.get(name);
+    }
+
+    Environment with(String name, String value, Boolean isExported) {
+        Boolean isExportedAlready = exported.contains(name);
+        Boolean isValueUnchanged = value == null || value.equals(variables.get(name));
+        if (isValueUnchanged && (!isExported || isExportedAlready)) {
+            return this;
+        }
+        Map<String, String> nextVariables = variables;
+        if (value != null) {
+            nextVariables = new HashMap<>(variables);
+            nextVariables.put(name, value);
+            nextVariables = Collections.unmodifiableMap(nextVariables);
+        }
+        Set<String> nextExported = exported;
+        if (isExported && !isExportedAlready) {
+            nextExported = new HashSet<>(exported);
+            nextExported.add(name);
+            nextExported = Collections.unmodifiableSet(nextExported);
+        }
+        return new Environment(nextVariables, nextExported);
+    }
+
+    Environment without(String name) {
+        if (!variables.containsKey(name) && !exported.contains(name)) {
+            return this;
+        }
+        Map<String, String> nextVariables = new HashMap<>(variables);
+        nextVariables.remove(name);
+        Set<String> nextExported = new HashSet<>(exported);
+        nextExported.remove(name);
+        return new Environment(Collections.unmodifiableMap(nextVariables), Collections.unmodifiableSet(nextExported));
+    }
+
+    // Exported variables that have a value, sorted by name.
+    Map<String, String> exportedVariables() {
+        Map<String, String> sorted = new TreeMap<>();
+        for (String name : exported) {
+            if (variables.containsKey(name)) {
+                sorted.put(name, variables.get(name));
+            }
+        }
+        return sorted;
+    }
+
+    synchronized ProcessChanges processChanges() {
+        if (processChanges == null) {
+            Map<String, String> inherited = System.getenv();
+            Map<String, String> set = new HashMap<>(exportedVariables());
+            set.entrySet().removeIf(entry -> entry.getValue().equals(inherited.get(entry.getKey())));
+            Set<String> removed = new HashSet<>();
+            for (String name : inherited.keySet()) {
+                if (!exported.contains(name) || !variables.containsKey(name)) {
+                    removed.add(name);
+                }
+            }
+            processChanges = new ProcessChanges(Map.copyOf(set), Set.copyOf(removed));
+        }
+        return processChanges;
+    }
+
+    // A builder whose environment is never asked for starts the process with the
+    // JVM's environment as it is, so nothing gets copied unless something changed.
+    void applyTo(ProcessBuilder processBuilder) {
+        ProcessChanges changes = processChanges();
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<String, String> environment = processBuilder.environment();
+        environment.keySet().removeAll(changes.removed());
+        environment.putAll(changes.set());
+    }
+}
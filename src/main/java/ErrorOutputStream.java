@@ -0,0 +1,32 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Standard error next to a buffered standard output: whatever the output holds
+// is flushed before each write, so when both end up in the same place they come
+// out in the order they were written.
+class ErrorOutputStream extends OutputStream {
+    final OutputStream output;
+    final OutputStream destination;
+
+    ErrorOutputStream(OutputStream output, OutputStream destination) {
+        this.output = output;
+        this.destination = destination;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        output.flush();
+        destination.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        output.flush();
+        destination.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        destination.flush();
+    }
+}
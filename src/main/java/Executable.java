@@ -1,66 +1,71 @@
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class Executable extends Program {
-    static final String PATH = System.getenv("PATH");
-    static final String[] DIRS = (PATH != null && !PATH.isEmpty())
-            ? PATH.split(":")
-            : new String[] {};
+    static final Pattern OPEN_FAILURE_PATTERN = Pattern.compile("^(.*) \\((.*)\\)$");
     Boolean shouldReturnOutput = false;
+    // what the program is started as: its name, unless ProcessBuilder would look
+    // that up through a different PATH than the shell's
+    String command;
 
-    Executable(String name, Map<RedirectType, File> redirects) {
+    // `commandHash` is the one for the PATH of the shell that runs the program.
+    Executable(String name, Map<RedirectType, File> redirects, CommandHash commandHash) {
         super(name, redirects);
-        ensureExecutableExists();
+        ensureExecutableExists(commandHash);
     }
 
     @Override
     public ExecutionResult execute(Shell shell, List<String> args) {
-        List<String> processArgs = new ArrayList<>();
-        processArgs.add(this.name);
-        processArgs.addAll(args);
-        ProcessBuilder processBuilder = new ProcessBuilder(processArgs);
-        processBuilder.directory(shell.cwd);
-
-        ProcessBuilder.Redirect redirectInput = ProcessBuilder.Redirect.INHERIT;
-        ProcessBuilder.Redirect redirectOutput = getProcessRedirect(getOutputRedirect());
-        ProcessBuilder.Redirect redirectError = getProcessRedirect(getErrorRedirect());
+        ProcessBuilder processBuilder = createProcessBuilder(shell, args);
+        ProcessBuilder.Redirect redirectOutput = processBuilder.redirectOutput();
+        ProcessBuilder.Redirect redirectError = processBuilder.redirectError();
 
-        processBuilder.redirectInput(redirectInput);
-        if (!shouldReturnOutput) {
-            processBuilder.redirectOutput(redirectOutput);
+        if (shouldReturnOutput) {
+            processBuilder.redirectOutput(ProcessBuilder.Redirect.PIPE);
         }
-        processBuilder.redirectError(redirectError);
 
         try {
+            long spawnStart = System.nanoTime();
             Process process = processBuilder.start();
-            process.waitFor();
-            String output = null;
-
-            if (shouldReturnOutput || redirectOutput == ProcessBuilder.Redirect.PIPE) {
-                output = new String(process.getInputStream().readAllBytes());
-                if (!shouldReturnOutput) {
-                    if (output.length() > 0) {
-                        System.out.print(output);
-                    }
-                }
+            spawnNanos = System.nanoTime() - spawnStart;
+            CommandSubstitution.Capture capturedOutput = new CommandSubstitution.Capture(
+                    CommandSubstitution.DEFAULT_CAPTURE_LIMIT);
+            List<Thread> pumps = new ArrayList<>();
+
+            if (shouldReturnOutput) {
+                pumps.add(StreamPump.start(process.getInputStream(), capturedOutput));
+            } else if (redirectOutput == ProcessBuilder.Redirect.PIPE) {
+                pumps.add(StreamPump.start(process.getInputStream(), out));
             }
 
             if (redirectError == ProcessBuilder.Redirect.PIPE) {
-                String error = new String(process.getErrorStream().readAllBytes());
-                if (error.length() > 0) {
-                    System.err.print(error);
-                }
+                pumps.add(StreamPump.start(process.getErrorStream(), err));
+            }
+
+            Thread inputFeed = startInputFeed(shell, process);
+            if (inputFeed != null) {
+                pumps.add(inputFeed);
+            }
+
+            process.waitFor();
+            for (Thread pump : pumps) {
+                pump.join();
             }
 
-            return shouldReturnOutput
-                    ? new ExecutionResult(output)
+            ExecutionResult result = shouldReturnOutput
+                    ? new ExecutionResult(capturedOutput.toTrimmedString())
                     : new ExecutionResult();
+            result.exitCode = process.exitValue();
+            return result;
         } catch (IOException e) {
-            return new ExecutionError(e.getMessage());
+            return new ExecutionError(describeStartFailure(e));
         } catch (InterruptedException e) {
             return new ExecutionError(String.format(
                     "Error while running program %s.\n%s",
@@ -69,15 +74,62 @@ public class Executable extends Program {
         }
     }
 
-    private void ensureExecutableExists() {
-        String programPath = findExecutablePath(this.name);
+    ProcessBuilder createProcessBuilder(Shell shell, List<String> args) {
+        List<String> processArgs = new ArrayList<>();
+        processArgs.add(command);
+        processArgs.addAll(args);
+        ProcessBuilder processBuilder = new ProcessBuilder(processArgs);
+        processBuilder.directory(shell.cwd);
+        if (in != null || heredoc != null || shell.in instanceof SessionInput || shell.isInputRedirected) {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.PIPE);
+        } else if (inputRedirect != null) {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.from(resolveRedirect(inputRedirect)));
+        } else {
+            processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+        }
+        (environment != null ? environment : shell.environment).applyTo(processBuilder);
+        processBuilder.redirectOutput(getProcessRedirect(getOutputRedirect()));
+        processBuilder.redirectError(getProcessRedirect(getErrorRedirect()));
+        return processBuilder;
+    }
+
+    Thread startInputFeed(Shell shell, Process process) {
+        if (in != null) {
+            return StreamPump.feed(in, process.getOutputStream());
+        }
+        if (heredoc != null) {
+            return StreamPump.feed(new ByteArrayInputStream(getHeredocBytes()), process.getOutputStream());
+        }
+        if (inputRedirect != null) {
+            return null;
+        }
+        if (shell.in instanceof SessionInput sessionInput) {
+            return sessionInput.forwardTo(process);
+        }
+        if (shell.isInputRedirected) {
+            return StreamPump.feed(shell.in, process.getOutputStream());
+        }
+        return null;
+    }
+
+    private void ensureExecutableExists(CommandHash commandHash) {
+        String programPath = findExecutablePath(commandHash, this.name);
         if (programPath == null) {
             throw new IllegalArgumentException(String.format("The program %s is not available via PATH.", this.name));
         }
+        command = this.name.contains("/") || commandHash.isProcessPath ? this.name : programPath;
+        if (!this.name.contains("/")) {
+            commandHash.remember(this.name);
+        }
     }
 
-    static String findExecutablePath(String programName) {
-        for (String dirPath : DIRS) {
+    static String findExecutablePath(CommandHash commandHash, String programName) {
+        if (!programName.contains("/") && commandHash.isBuilt) {
+            return commandHash.find(programName);
+        }
+
+        // before the hash is built, checking each directory beats listing all of them
+        for (String dirPath : commandHash.dirs) {
             File program = new File(dirPath, programName);
             if (program.exists()) {
                 return program.getAbsolutePath();
@@ -91,59 +143,28 @@ public class Executable extends Program {
             return ProcessBuilder.Redirect.PIPE;
         }
 
+        File target = resolveRedirect(redirect.file);
         return RedirectType.isAppend(redirect.type)
-                ? ProcessBuilder.Redirect.appendTo(redirect.file)
-                : ProcessBuilder.Redirect.to(redirect.file);
-    }
-
-    public static List<String> autocomplete(String commandBeginning) {
-        return Arrays.stream(DIRS)
-                .map(dir -> new File(dir))
-                .flatMap(dirFile -> dirFile.listFiles() != null ? Arrays.stream(dirFile.listFiles()) : null)
-                .map(exec -> exec.getName())
-                .filter(execName -> execName.startsWith(commandBeginning))
-                .toList();
+                ? ProcessBuilder.Redirect.appendTo(target)
+                : ProcessBuilder.Redirect.to(target);
     }
 
+    // The process opens its own redirect targets as it starts.
     @Override
-    public void print(Redirect redirect, String data) {
-        switch (redirect.type) {
-            case OUTPUT -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data);
-                } else {
-                    Printer.print(System.out, data);
-                }
-            }
-
-            case OUTPUT_APPEND -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data, true);
-                } else {
-                    Printer.print(System.out, data);
-                }
-            }
-
-            case ERROR -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data);
-                } else {
-                    Printer.print(System.err, data);
-                }
-            }
+    ExecutionError openRedirects() {
+        return null;
+    }
 
-            case ERROR_APPEND -> {
-                if (redirect.file != null) {
-                    Printer.print(redirect.file, data, true);
-                } else {
-                    Printer.print(System.err, data);
-                }
+    // A redirect target that can't be opened surfaces as the cause of the start failure,
+    // worded "path (reason)". It's reported the way the shell reports other files.
+    static String describeStartFailure(IOException e) {
+        if (e.getCause() instanceof FileNotFoundException notFound) {
+            Matcher matcher = OPEN_FAILURE_PATTERN.matcher(notFound.getMessage());
+            if (matcher.matches()) {
+                return String.format("%s: %s", matcher.group(1), matcher.group(2));
             }
-
-            case INPUT -> throw new UnsupportedOperationException("Unimplemented case: " + redirect.type);
-            case INPUT_APPEND -> throw new UnsupportedOperationException("Unimplemented case: " + redirect.type);
-            default -> throw new IllegalArgumentException("Unexpected value: " + redirect.type);
         }
+        return e.getMessage();
     }
 
     void toggleShouldReturnOutput() {
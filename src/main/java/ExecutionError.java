@@ -3,5 +3,6 @@ public class ExecutionError extends ExecutionResult {
 
     ExecutionError(String message) {
         this.message = message;
+        this.exitCode = 1;
     }
 }
@@ -1,5 +1,6 @@
 public class ExecutionResult {
     String value;
+    int exitCode = 0;
 
     ExecutionResult() {
     };
@@ -7,4 +8,8 @@ public class ExecutionResult {
     ExecutionResult(String value) {
         this.value = value;
     };
+
+    ExecutionResult(int exitCode) {
+        this.exitCode = exitCode;
+    };
 }
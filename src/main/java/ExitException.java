@@ -1,2 +1,7 @@
 public class ExitException extends UserInitiatedException {
+    final int exitCode;
+
+    ExitException(int exitCode) {
+        this.exitCode = exitCode;
+    }
 }
@@ -0,0 +1,102 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Wire format shared by ShellServer and ShellClient: every frame is a one-byte
+// type, a four-byte big-endian payload length and the payload itself.
+class FramedChannel implements Closeable {
+    static final byte ARGUMENTS = 'A';
+    static final byte ENVIRONMENT = 'E';
+    static final byte STDIN = 'I';
+    static final byte STDOUT = 'O';
+    static final byte STDERR = 'R';
+    static final byte EXIT = 'X';
+    static final int HEADER_SIZE = 5;
+    // the length comes from the other side, so it's checked before anything is allocated
+    static final int MAX_PAYLOAD_SIZE = 16 << 20;
+
+    final SocketChannel channel;
+    final ByteBuffer readHeader = ByteBuffer.allocate(HEADER_SIZE);
+    final ByteBuffer writeHeader = ByteBuffer.allocate(HEADER_SIZE);
+    final ReentrantLock writeLock = new ReentrantLock();
+
+    record Frame(byte type, byte[] payload) {
+    }
+
+    FramedChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    void write(byte type, byte[] bytes) throws IOException {
+        write(type, bytes, 0, bytes.length);
+    }
+
+    void write(byte type, byte[] bytes, int offset, int length) throws IOException {
+        writeLock.lock();
+        try {
+            writeHeader.clear();
+            writeHeader.put(type).putInt(length).flip();
+            ByteBuffer[] buffers = { writeHeader, ByteBuffer.wrap(bytes, offset, length) };
+            while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+                channel.write(buffers);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void writeExitCode(int exitCode) throws IOException {
+        write(EXIT, ByteBuffer.allocate(Integer.BYTES).putInt(exitCode).array());
+    }
+
+    // Returns null once the other side has closed the connection.
+    Frame read() throws IOException {
+        readHeader.clear();
+        if (channel.read(readHeader) == -1) {
+            return null;
+        }
+        readFully(readHeader);
+        readHeader.flip();
+        byte type = readHeader.get();
+        int length = readHeader.getInt();
+        if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+            throw new IOException(String.format("Frame length %d is out of range", length));
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(payload);
+        return new Frame(type, payload.array());
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                throw new EOFException("Connection closed in the middle of a frame");
+            }
+        }
+    }
+
+    OutputStream outputStream(byte type) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (length > 0) {
+                    FramedChannel.this.write(type, bytes, offset, length);
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
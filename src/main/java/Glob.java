@@ -0,0 +1,239 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Pattern;
+
+// A pattern compiled segment by segment: segments without wildcards are taken as
+// they are, those with `*`, `?` or `[...]` become a regex matched against the names
+// in a directory listing, and `**` stands for any number of directories. Patterns
+// with `**` are walked in parallel, one task per directory; either way the paths
+// come back sorted.
+class Glob {
+    static final ForkJoinPool WALKERS = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    static final String RECURSIVE = "**";
+    final List<Segment> segments = new ArrayList<>();
+    final Boolean isAbsolute;
+    final Boolean isDirectoryOnly;
+    Boolean isRecursive = false;
+
+    // Exactly one of `literal` and `matcher` is set, unless the segment is `**`.
+    record Segment(String literal, Pattern matcher, Boolean matchesHidden) {
+        Boolean isRecursive() {
+            return literal == null && matcher == null;
+        }
+    }
+
+    Glob(String pattern) {
+        isAbsolute = pattern.startsWith("/");
+        isDirectoryOnly = pattern.endsWith("/");
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.equals(RECURSIVE)) {
+                segments.add(new Segment(null, null, false));
+                isRecursive = true;
+            } else if (hasWildcard(segment)) {
+                segments.add(new Segment(null, compile(segment), segment.startsWith(".")));
+            } else {
+                segments.add(new Segment(unescape(segment), null, true));
+            }
+        }
+    }
+
+    static Boolean isSpecial(char c) {
+        return c == '*' || c == '?' || c == '[' || c == ']' || c == '\\';
+    }
+
+    // Matching paths, or none; relative patterns give paths relative to `cwd`.
+    List<String> expand(File cwd) {
+        Path start = isAbsolute ? Path.of("/") : cwd.toPath();
+        Expansion expansion = new Expansion(start, isAbsolute ? "/" : "", 0);
+        List<String> paths = isRecursive ? WALKERS.invoke(expansion) : expansion.compute();
+        return new ArrayList<>(new TreeSet<>(paths));
+    }
+
+    private class Expansion extends RecursiveTask<List<String>> {
+        final Path dir;
+        final String shown;
+        final int segment;
+
+        Expansion(Path dir, String shown, int segment) {
+            this.dir = dir;
+            this.shown = shown;
+            this.segment = segment;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (segment == segments.size()) {
+                if (!isDirectoryOnly) {
+                    return List.of(shown);
+                }
+                return Files.isDirectory(dir) ? List.of(shown + "/") : List.of();
+            }
+
+            Segment current = segments.get(segment);
+            if (current.literal() != null) {
+                Path next = dir.resolve(current.literal());
+                return Files.exists(next, LinkOption.NOFOLLOW_LINKS)
+                        ? new Expansion(next, childPath(shown, current.literal()), segment + 1).compute()
+                        : List.of();
+            }
+
+            Boolean isLast = segment + 1 == segments.size();
+            List<String> paths = new ArrayList<>();
+            List<Expansion> expansions = new ArrayList<>();
+            if (current.isRecursive() && !isLast) {
+                // `**` standing for no directories at all
+                expansions.add(new Expansion(dir, shown, segment + 1));
+            }
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, entry -> matches(current, entry))) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (current.isRecursive()) {
+                        if (isLast && !isDirectoryOnly) {
+                            paths.add(childPath(shown, name));
+                        } else if (isLast && Files.isDirectory(entry)) {
+                            paths.add(childPath(shown, name) + "/");
+                        }
+                        if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            expansions.add(new Expansion(entry, childPath(shown, name), segment));
+                        }
+                    } else if (isLast && !isDirectoryOnly) {
+                        paths.add(childPath(shown, name));
+                    } else if (Files.isDirectory(entry)) {
+                        expansions.add(new Expansion(entry, childPath(shown, name), segment + 1));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // a directory that can't be read has nothing to match
+            }
+
+            if (isRecursive) {
+                for (Expansion expansion : ForkJoinTask.invokeAll(expansions)) {
+                    paths.addAll(expansion.join());
+                }
+            } else {
+                for (Expansion expansion : expansions) {
+                    paths.addAll(expansion.compute());
+                }
+            }
+            return paths;
+        }
+    }
+
+    // Hidden names only match a segment that starts with a dot; `**` never descends into them.
+    private static Boolean matches(Segment segment, Path entry) {
+        String name = entry.getFileName().toString();
+        if (name.startsWith(".") && !segment.matchesHidden()) {
+            return false;
+        }
+        return segment.isRecursive() || segment.matcher().matcher(name).matches();
+    }
+
+    private static String childPath(String shown, String name) {
+        return shown.isEmpty() || shown.endsWith("/") ? shown + name : shown + "/" + name;
+    }
+
+    private static Boolean hasWildcard(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '*' || c == '?' || (c == '[' && findClassEnd(segment, i) > 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String unescape(String segment) {
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\\' && i + 1 < segment.length()) {
+                c = segment.charAt(++i);
+            }
+            literal.append(c);
+        }
+        return literal.toString();
+    }
+
+    private static Pattern compile(String segment) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            int classEnd;
+            if (c == '\\' && i + 1 < segment.length()) {
+                appendLiteral(regex, segment.charAt(++i));
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else if (c == '[' && (classEnd = findClassEnd(segment, i)) > 0) {
+                appendClass(regex, segment, i + 1, classEnd);
+                i = classEnd;
+            } else {
+                appendLiteral(regex, c);
+            }
+        }
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    // Index of the `]` closing the class opened at `open`, or -1. A `]` right after
+    // the opening bracket, or after its negation, is a member rather than the end.
+    private static int findClassEnd(String segment, int open) {
+        int i = open + 1;
+        if (i < segment.length() && (segment.charAt(i) == '!' || segment.charAt(i) == '^')) {
+            i++;
+        }
+        if (i < segment.length() && segment.charAt(i) == ']') {
+            i++;
+        }
+        for (; i < segment.length(); i++) {
+            if (segment.charAt(i) == '\\') {
+                i++;
+            } else if (segment.charAt(i) == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void appendClass(StringBuilder regex, String segment, int from, int to) {
+        regex.append('[');
+        int i = from;
+        if (segment.charAt(i) == '!' || segment.charAt(i) == '^') {
+            regex.append('^');
+            i++;
+        }
+        for (; i < to; i++) {
+            char c = segment.charAt(i);
+            if (c == '\\' && i + 1 < to) {
+                c = segment.charAt(++i);
+            }
+            if (c == '[' || c == ']' || c == '\\' || c == '^' || c == '&') {
+                regex.append('\\');
+            }
+            regex.append(c);
+        }
+        regex.append(']');
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if ("\\.[]{}()<>*+-=!?^$|".indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+}
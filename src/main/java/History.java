@@ -0,0 +1,103 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Entered command lines, one per line of the history file. The file is mapped
+// rather than read and an entry is only decoded when it's looked at, so loading
+// costs one scan for line breaks however long the history is.
+class History {
+    // Line breaks inside an entry are stored as carriage returns, which the line
+    // editor never puts into a command line.
+    static final byte ENTRY_SEPARATOR = '\n';
+    static final char STORED_LINE_BREAK = '\r';
+    static final int SCAN_CHUNK_SIZE = 65536;
+    final File file;
+    final HistoryIndex index = new HistoryIndex(this);
+    private MappedByteBuffer mapped;
+    // start and end offset of every mapped entry, in pairs
+    private int[] bounds = new int[0];
+    private int mappedCount = 0;
+    private final List<String> added = new ArrayList<>();
+
+    History(File file) {
+        this.file = file;
+    }
+
+    static History load(File file) throws IOException {
+        History history = new History(file);
+        if (file != null && file.isFile()) {
+            history.map();
+        }
+        return history;
+    }
+
+    private void map() throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), Integer.MAX_VALUE);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, channel.size() - size, size);
+        }
+
+        bounds = new int[256];
+        byte[] chunk = new byte[SCAN_CHUNK_SIZE];
+        int start = 0;
+        for (int offset = 0; offset < mapped.limit(); offset += chunk.length) {
+            int length = Math.min(chunk.length, mapped.limit() - offset);
+            mapped.get(offset, chunk, 0, length);
+            for (int i = 0; i < length; i++) {
+                if (chunk[i] == ENTRY_SEPARATOR) {
+                    addBounds(start, offset + i);
+                    start = offset + i + 1;
+                }
+            }
+        }
+        addBounds(start, mapped.limit());
+    }
+
+    private void addBounds(int start, int end) {
+        if (end == start) {
+            return;
+        }
+        if (2 * mappedCount + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[2 * mappedCount] = start;
+        bounds[2 * mappedCount + 1] = end;
+        mappedCount++;
+    }
+
+    synchronized int size() {
+        return mappedCount + added.size();
+    }
+
+    synchronized String get(int i) {
+        if (i >= mappedCount) {
+            return added.get(i - mappedCount);
+        }
+        byte[] entry = new byte[bounds[2 * i + 1] - bounds[2 * i]];
+        mapped.get(bounds[2 * i], entry);
+        return new String(entry, StandardCharsets.UTF_8).replace(STORED_LINE_BREAK, '\n');
+    }
+
+    // Blank lines and repeats of the previous entry aren't kept. Each entry is
+    // appended to the file in a single write, so shells sharing it don't interleave.
+    void add(String line) throws IOException {
+        synchronized (this) {
+            if (line.isBlank() || (size() > 0 && get(size() - 1).equals(line))) {
+                return;
+            }
+            added.add(line);
+        }
+        if (file != null) {
+            String stored = line.replace('\n', STORED_LINE_BREAK) + (char) ENTRY_SEPARATOR;
+            Files.write(file.toPath(), stored.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Trigram postings over the history. A reverse search only checks the entries
+// holding the rarest trigram of the query, newest first, instead of all of them.
+class HistoryIndex {
+    static final int GRAM_LENGTH = 3;
+    final History history;
+    final Map<Long, Postings> postings = new HashMap<>();
+    int indexedCount = 0;
+    CompletableFuture<Void> ready;
+
+    // Ids of the entries containing one trigram, in ascending order.
+    static class Postings {
+        int[] ids = new int[2];
+        int size = 0;
+
+        void add(int id) {
+            if (size > 0 && ids[size - 1] == id) {
+                return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        // position of the first id that isn't below `id`
+        int lowerBound(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            return position >= 0 ? position : -position - 1;
+        }
+    }
+
+    HistoryIndex(History history) {
+        this.history = history;
+    }
+
+    synchronized CompletableFuture<Void> buildInBackground() {
+        if (ready == null) {
+            ready = new CompletableFuture<>();
+            Thread.ofVirtual().start(() -> {
+                try {
+                    catchUp();
+                    ready.complete(null);
+                } catch (RuntimeException e) {
+                    ready.completeExceptionally(e);
+                }
+            });
+        }
+        return ready;
+    }
+
+    // The newest entry older than `before` that contains `query`, or -1.
+    int search(String query, int before) {
+        if (query.isEmpty()) {
+            return -1;
+        }
+        buildInBackground().join();
+
+        synchronized (this) {
+            catchUp();
+            if (query.length() < GRAM_LENGTH) {
+                for (int id = Math.min(before, history.size()) - 1; id >= 0; id--) {
+                    if (history.get(id).contains(query)) {
+                        return id;
+                    }
+                }
+                return -1;
+            }
+
+            Postings rarest = null;
+            for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+                Postings candidates = postings.get(gram(query, i));
+                if (candidates == null) {
+                    return -1;
+                }
+                if (rarest == null || candidates.size < rarest.size) {
+                    rarest = candidates;
+                }
+            }
+            for (int k = rarest.lowerBound(before) - 1; k >= 0; k--) {
+                if (history.get(rarest.ids[k]).contains(query)) {
+                    return rarest.ids[k];
+                }
+            }
+            return -1;
+        }
+    }
+
+    // Indexes whatever was added to the history since the last time.
+    private synchronized void catchUp() {
+        int size = history.size();
+        while (indexedCount < size) {
+            String entry = history.get(indexedCount);
+            for (int i = 0; i + GRAM_LENGTH <= entry.length(); i++) {
+                postings.computeIfAbsent(gram(entry, i), gram -> new Postings()).add(indexedCount);
+            }
+            indexedCount++;
+        }
+    }
+
+    private static long gram(String s, int from) {
+        return ((long) s.charAt(from) << 32) | ((long) s.charAt(from + 1) << 16) | s.charAt(from + 2);
+    }
+}
@@ -2,26 +2,53 @@
 // instead of a line-buffered one is inspired by the following resource:
 // https://darkcoding.net/software/non-blocking-console-io-is-not-possible/
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.text.CharacterIterator;
-import java.text.StringCharacterIterator;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Stream;
 
 public class Input {
     public String command;
     public List<String> args;
     public Map<RedirectType, File> redirects;
-    static final Pattern COMMAND_BEGINNING_PATTERN = Pattern.compile("^\\s*(\\S+)$");
+    public String heredocDelimiter;
+    public String heredoc;
+    // compiled pattern of each argument, null for arguments taken literally; null
+    // altogether when there's nothing to expand
+    List<Glob> argGlobs;
+    // substitutions of the command and of each argument, in the same way; and the
+    // redirect targets that have any, as written
+    List<List<Lexer.Substitution>> wordSubstitutions;
+    Map<RedirectType, RedirectTarget> redirectTargets;
+    // NAME=value words that came before the command, null when there were none
+    List<String> assignments;
     static final Character BELL_CHARACTER = '\u0007';
+    static final String PROMPT = "$ ";
+    static final int PARSE_CACHE_SIZE = 1024;
+    static final Map<String, Node> PARSE_CACHE = Collections.synchronizedMap(
+            new LinkedHashMap<String, Node>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Node> eldest) {
+                    return size() > PARSE_CACHE_SIZE;
+                }
+            });
+    static final KeyReader KEY_READER = new KeyReader(new FileInputStream(FileDescriptor.in));
+    // completes command names from the interactive shell's PATH
+    static volatile CompletionIndex commandIndex;
+    static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+    static final Pattern ASSIGNMENT_PATTERN = Pattern.compile("^[A-Za-z_][A-Za-z0-9_]*=");
+    static int terminalColumns = 80;
+
+    // The substitution offsets point into `text`, which a File could normalize away.
+    record RedirectTarget(String text, List<Lexer.Substitution> substitutions) {
+    }
 
     Input(String command, List<String> args, Map<RedirectType, File> redirects) {
         this.command = command;
@@ -29,258 +56,515 @@ public class Input {
         this.redirects = redirects;
     }
 
-    private static String parseArgFromIterator(CharacterIterator it) {
-        StringBuilder arg = new StringBuilder();
+    Input withHeredoc(String heredoc) {
+        Input input = new Input(command, args, redirects);
+        input.heredocDelimiter = heredocDelimiter;
+        input.heredoc = heredoc;
+        input.argGlobs = argGlobs;
+        input.wordSubstitutions = wordSubstitutions;
+        input.redirectTargets = redirectTargets;
+        return input;
+    }
 
-        for (Character c = it.current(); c != CharacterIterator.DONE && !Character.isWhitespace(c); c = it.next()) {
-            if (c == '\'') {
-                Character quotedChar = it.next();
-                while (quotedChar != '\'' && quotedChar != CharacterIterator.DONE) {
-                    arg.append(quotedChar);
-                    quotedChar = it.next();
-                }
+    // Runs every `$(...)` and fills in its output. Arguments coming out of a
+    // substitution aren't expanded as patterns; the others keep theirs.
+    Input withSubstitutions(Shell shell) {
+        if (wordSubstitutions == null && redirectTargets == null) {
+            return this;
+        }
+        List<String> words = new ArrayList<>();
+        List<Glob> globs = new ArrayList<>();
+        Boolean isAssigning = true;
+        for (int i = 0; i <= args.size(); i++) {
+            String word = i == 0 ? command : args.get(i - 1);
+            List<Lexer.Substitution> substitutions = wordSubstitutions != null ? wordSubstitutions.get(i) : null;
+            if (word == null) {
                 continue;
             }
-
-            if (c == '"') {
-                Character quotedChar = it.next();
-                while (quotedChar != '"' && quotedChar != CharacterIterator.DONE) {
-                    if (quotedChar == '\\') {
-                        Character nextChar = it.next();
-                        if (Set.of('\\', '$', '"', '\n').contains(nextChar)) {
-                            quotedChar = nextChar;
-                        } else {
-                            it.previous();
-                        }
-                    }
-                    arg.append(quotedChar);
-                    quotedChar = it.next();
-                }
+            // the value of an assignment stays one word
+            isAssigning &= isAssignment(word);
+            if (substitutions != null && isAssigning) {
+                words.add(CommandSubstitution.expand(shell, word, substitutions));
+                globs.add(null);
                 continue;
             }
-
-            if (c == '\\') {
-                Character nextChar = it.next();
-                if (nextChar != CharacterIterator.DONE) {
-                    arg.append(nextChar);
-                }
+            if (substitutions == null) {
+                words.add(word);
+                globs.add(i > 0 && argGlobs != null ? argGlobs.get(i - 1) : null);
                 continue;
             }
-
-            arg.append(c);
+            for (String field : CommandSubstitution.expandFields(shell, word, substitutions)) {
+                words.add(field);
+                globs.add(null);
+            }
         }
 
-        return arg.toString();
-    }
-
-    private static String parseRedirectTypeFromIterator(CharacterIterator it) {
-        StringBuilder operator = new StringBuilder();
-
-        Character firstChar = it.current();
-
-        if (!Set.of('1', '2', '>').contains(firstChar)) {
-            return null;
+        Map<RedirectType, File> expandedRedirects = redirects;
+        if (redirectTargets != null) {
+            expandedRedirects = new HashMap<>(redirects);
+            for (Map.Entry<RedirectType, RedirectTarget> entry : redirectTargets.entrySet()) {
+                RedirectTarget target = entry.getValue();
+                expandedRedirects.put(entry.getKey(),
+                        new File(CommandSubstitution.expand(shell, target.text(), target.substitutions())));
+            }
         }
 
-        operator.append(firstChar);
-
-        for (Character c = it.next(); c == '>' && operator.length() < 3; c = it.next()) {
-            operator.append(c);
+        Input input = new Input(words.isEmpty() ? null : words.getFirst(),
+                words.size() > 1 ? words.subList(1, words.size()) : List.of(), expandedRedirects);
+        input.heredocDelimiter = heredocDelimiter;
+        input.heredoc = heredoc;
+        if (globs.stream().anyMatch(glob -> glob != null)) {
+            input.argGlobs = globs.subList(1, globs.size());
         }
+        return input;
+    }
 
-        if (!Character.isWhitespace(it.current()) || !operator.toString().matches("^[012]?>{1,2}$")) {
-            for (int i = 0; i < operator.length(); i++) {
-                it.previous();
+    // Arguments whose pattern matches nothing are passed on as they were written.
+    Input withExpandedGlobs(File cwd) {
+        if (argGlobs == null) {
+            return this;
+        }
+        List<String> expandedArgs = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            List<String> paths = argGlobs.get(i) != null ? argGlobs.get(i).expand(cwd) : List.of();
+            if (paths.isEmpty()) {
+                expandedArgs.add(args.get(i));
+            } else {
+                expandedArgs.addAll(paths);
             }
-            return null;
         }
+        Input input = new Input(command, expandedArgs, redirects);
+        input.heredocDelimiter = heredocDelimiter;
+        input.heredoc = heredoc;
+        input.assignments = assignments;
+        return input;
+    }
 
-        return operator.toString();
+    static Boolean isAssignment(String word) {
+        return word.indexOf('=') > 0 && ASSIGNMENT_PATTERN.matcher(word).find();
     }
 
-    private static void skipIteratorWhitespace(CharacterIterator it) {
-        while (Character.isWhitespace(it.current())) {
-            it.next();
+    // Takes the assignments off the front; the first word that isn't one is the command.
+    Input withAssignmentsSeparated() {
+        if (command == null || !isAssignment(command)) {
+            return this;
+        }
+        List<String> words = new ArrayList<>();
+        words.add(command);
+        words.addAll(args);
+        int count = 0;
+        while (count < words.size() && isAssignment(words.get(count))) {
+            count++;
         }
+        Input input = count < words.size()
+                ? new Input(words.get(count), words.subList(count + 1, words.size()), redirects)
+                : new Input(null, List.of(), redirects);
+        input.heredocDelimiter = heredocDelimiter;
+        input.heredoc = heredoc;
+        input.assignments = List.copyOf(words.subList(0, count));
+        if (argGlobs != null && count < words.size()) {
+            input.argGlobs = argGlobs.subList(count, argGlobs.size());
+        }
+        return input;
     }
 
-    public static Input fromString(String s) {
-        List<String> parsedCommandAndArgs = new ArrayList<>();
-        HashMap<RedirectType, File> redirects = new HashMap<>();
-
-        CharacterIterator it = new StringCharacterIterator(s);
-        while (it.current() != CharacterIterator.DONE) {
-            skipIteratorWhitespace(it);
-
-            String redirectOperator = parseRedirectTypeFromIterator(it);
-            if (redirectOperator != null) {
-                skipIteratorWhitespace(it);
-                String redirectTo = parseArgFromIterator(it);
-                File redirectFile = new File(redirectTo);
-                File redirectParentFile = redirectFile.getParentFile();
-                if (redirectParentFile != null && redirectParentFile.exists()) {
-                    if (!redirectFile.exists()) {
-                        try {
-                            redirectFile.createNewFile();
-                        } catch (IOException e) {
-                            Printer.print(System.err, String.format("Couldn't create the file to redirect to: %s",
-                                    redirectFile.toString()));
-                            continue;
-                        }
-                    }
-                    redirects.put(RedirectType.fromString(redirectOperator), new File(redirectTo));
-                } else {
-                    Printer.print(System.err, String.format("No such file or directory: %s", redirectFile.toString()));
-                }
-                continue;
-            }
-
-            parsedCommandAndArgs.add(parseArgFromIterator(it));
+    // Parsing is pure, so a line that comes around again (generated scripts, the
+    // same command typed again) reuses the previous tree instead of being tokenized again.
+    static Node parse(String s) {
+        Node node = PARSE_CACHE.get(s);
+        if (node == null) {
+            node = Parser.parse(s);
+            PARSE_CACHE.put(s, node);
         }
+        return node;
+    }
 
-        String command = parsedCommandAndArgs.get(0);
-        List<String> commandArgs = parsedCommandAndArgs.size() > 1
-                ? parsedCommandAndArgs.subList(1, parsedCommandAndArgs.size())
-                : new ArrayList<>();
-
-        return new Input(command, commandArgs, redirects);
+    static Input createInput(List<String> commandAndArgs, List<String> globs,
+            List<List<Lexer.Substitution>> substitutions, Map<RedirectType, File> redirects,
+            Map<RedirectType, RedirectTarget> redirectTargets, String heredocDelimiter) {
+        String command = commandAndArgs.isEmpty() ? null : commandAndArgs.get(0);
+        List<String> commandArgs = commandAndArgs.size() > 1
+                ? List.copyOf(commandAndArgs.subList(1, commandAndArgs.size()))
+                : List.of();
+        Input input = new Input(command, commandArgs, Map.copyOf(redirects));
+        input.heredocDelimiter = heredocDelimiter;
+        if (globs.size() > 1 && globs.subList(1, globs.size()).stream().anyMatch(glob -> glob != null)) {
+            input.argGlobs = Collections.unmodifiableList(globs.subList(1, globs.size()).stream()
+                    .map(glob -> glob != null ? new Glob(glob) : null)
+                    .toList());
+        }
+        if (substitutions.stream().anyMatch(substitution -> substitution != null)) {
+            input.wordSubstitutions = Collections.unmodifiableList(new ArrayList<>(substitutions));
+        }
+        if (!redirectTargets.isEmpty()) {
+            input.redirectTargets = Map.copyOf(redirectTargets);
+        }
+        return input;
     }
 
     static String readInput() throws IOException, UserInitiatedException {
+        return readInput(null, null);
+    }
+
+    static String readInput(History history, PathCompletion paths) throws IOException, UserInitiatedException {
         StringBuilder input = new StringBuilder();
-        ByteArrayOutputStream bout;
-        int c;
+        int key;
         Boolean isEscaped = false;
         Integer consecutiveTabsCount = 0;
+        int historyPosition = history != null ? history.size() : 0;
+        String draft = "";
 
         while (true) {
-            bout = new ByteArrayOutputStream();
-            c = System.in.read();
+            if (!KEY_READER.hasBufferedInput()) {
+                System.out.flush();
+            }
+            key = KEY_READER.next();
+
+            // reverse history search, which hands back the key that ended it
+            if (key == 18 && history != null) {
+                key = searchHistory(history, input);
+                historyPosition = history.size();
+                isEscaped = endsWithUnpairedBackslash(input);
+                consecutiveTabsCount = 0;
+            }
+
+            // history navigation
+            if ((key == KeyReader.ARROW_UP || key == KeyReader.ARROW_DOWN) && history != null) {
+                int position = historyPosition + (key == KeyReader.ARROW_UP ? -1 : 1);
+                if (position >= 0 && position <= history.size()) {
+                    if (historyPosition == history.size()) {
+                        draft = input.toString();
+                    }
+                    historyPosition = position;
+                    replaceLine(input, position == history.size() ? draft : history.get(position));
+                    isEscaped = endsWithUnpairedBackslash(input);
+                    consecutiveTabsCount = 0;
+                } else {
+                    System.out.print(BELL_CHARACTER);
+                }
+                continue;
+            }
 
             // abort
-            if (c == -1 || c == 3 || c == 4) {
+            if (key == KeyReader.END_OF_INPUT || key == 3 || key == 4) {
                 throw new AbortException();
             }
 
             // new line
-            if ((c == 13 || c == 10) && !isEscaped) {
+            if ((key == 13 || key == 10) && !isEscaped) {
                 return input.toString();
             }
 
             // delete
-            if (c == 127) {
+            if (key == 127) {
                 if (input.length() > 0) {
-                    input.deleteCharAt(input.length() - 1);
+                    int lastCodePoint = input.codePointBefore(input.length());
+                    input.setLength(input.length() - Character.charCount(lastCodePoint));
                     System.out.print("\b \b");
-                    System.out.flush();
                 }
                 continue;
             }
 
             // tab autocomplete
-            if (c == 9 && input.length() > 0) {
+            if (key == 9 && input.length() > 0) {
                 consecutiveTabsCount++;
-                Matcher commandBeginningMatcher = COMMAND_BEGINNING_PATTERN.matcher(input);
-                String commandBeginning = commandBeginningMatcher.find() ? commandBeginningMatcher.group(1) : null;
-                if (commandBeginning != null) {
-                    List<String> autocompleteOptions = Stream
-                            .concat(BuiltinCommand.autocomplete(commandBeginning).stream(),
-                                    Executable.autocomplete(commandBeginning).stream())
-                            .distinct()
-                            .sorted()
-                            .toList();
-                    switch (autocompleteOptions.size()) {
-                        case 0 -> System.out.print(BELL_CHARACTER);
-                        case 1 -> {
-                            String autocompletedInput = autocompleteOptions.getFirst();
-                            String newInputPortion = autocompletedInput
-                                    .substring(commandBeginning.length())
-                                    .concat(" ");
-                            input.append(newInputPortion);
-                            System.out.print(newInputPortion);
-                        }
-                        default -> {
-                            String autocompletedInput = findLongestCommonPrefix(autocompleteOptions,
-                                    commandBeginning);
-                            if (autocompletedInput.length() > commandBeginning.length()) {
-                                String newInputPortion = autocompletedInput.substring(commandBeginning.length());
-                                input.append(newInputPortion);
-                                System.out.print(newInputPortion);
-                            } else {
-                                if (consecutiveTabsCount == 1) {
-                                    System.out.print(BELL_CHARACTER);
-                                } else {
-                                    System.out.println();
-                                    System.out.println(String.join(" " + " ", autocompleteOptions));
-                                    System.out.print("$ " + input);
-                                }
-                            }
-                        }
-                    }
-                } else {
-                    System.out.print(BELL_CHARACTER);
-                }
-
+                complete(input, consecutiveTabsCount, paths);
                 continue;
             }
 
-            bout.write(c);
-            String binaryRepresentation = Integer.toBinaryString(c);
-            if (binaryRepresentation.length() == 8) {
-                // two byte character
-                if (binaryRepresentation.startsWith("110")) {
-                    bout.write(System.in.read());
-                }
-                // three byte character
-                else if (binaryRepresentation.startsWith("1110")) {
-                    bout.write(System.in.read());
-                    bout.write(System.in.read());
-                }
-                // four byte character
-                else if (binaryRepresentation.startsWith("11110")) {
-                    bout.write(System.in.read());
-                    bout.write(System.in.read());
-                    bout.write(System.in.read());
+            if (key == ' ' && paths != null && !isEscaped) {
+                paths.prefetch(paths.shell.cwd);
+            }
+
+            // bracketed paste
+            if (key == KeyReader.PASTE_START) {
+                int pasteStart = input.length();
+                if (KEY_READER.readPaste(input) == KeyReader.END_OF_INPUT) {
+                    throw new AbortException();
                 }
+                normalizePastedLineBreaks(input, pasteStart);
+                System.out.append(input, pasteStart, input.length());
+                isEscaped = endsWithUnpairedBackslash(input);
+                consecutiveTabsCount = 0;
+                continue;
+            }
+
+            // navigation keys and unrecognised escape sequences
+            if (key < 0) {
+                continue;
             }
 
-            if (c == 13 || c == 10) {
+            if (key == 13 || key == 10) {
                 input.append('\n');
                 System.out.print("\r\n");
             } else {
-                input.append(bout);
-                System.out.print(bout);
+                input.appendCodePoint(key);
+                if (Character.isBmpCodePoint(key)) {
+                    System.out.print((char) key);
+                } else {
+                    System.out.print(Character.toChars(key));
+                }
             }
 
-            if (c == 92) {
+            if (key == 92) {
                 isEscaped = !isEscaped;
             } else if (isEscaped) {
                 isEscaped = false;
             }
 
-            if (c != 9 && consecutiveTabsCount > 0) {
+            if (key != 9 && consecutiveTabsCount > 0) {
                 consecutiveTabsCount = 0;
             }
         }
     }
 
-    static String findLongestCommonPrefix(List<String> coll, String basePrefix) {
-        String shortestEntry = coll.stream()
-                .sorted((s1, s2) -> Integer.compare(s1.length(), s2.length()))
-                .findFirst()
-                .orElse(null);
+    // The first word of a command completes to a command name, any other word to a path.
+    private static void complete(StringBuilder input, Integer consecutiveTabsCount, PathCompletion paths) {
+        CompletionWord word = findCompletionWord(input);
+        CompletionIndex.Completion completion;
+        String completed;
+        if (word.isCommand()) {
+            completion = word.value().isEmpty() ? null : commandIndex.complete(word.value());
+            completed = word.value();
+        } else {
+            completion = paths != null ? paths.complete(word.value()) : null;
+            completed = word.value().substring(word.value().lastIndexOf('/') + 1);
+        }
+        if (completion == null) {
+            System.out.print(BELL_CHARACTER);
+            return;
+        }
 
-        if (shortestEntry == null || shortestEntry.equals(basePrefix)) {
+        List<String> autocompleteOptions = completion.matches();
+        switch (autocompleteOptions.size()) {
+            case 0 -> System.out.print(BELL_CHARACTER);
+            case 1 -> {
+                String autocompletedInput = autocompleteOptions.getFirst();
+                String newInputPortion = quoteForWord(autocompletedInput.substring(completed.length()), word.quote());
+                if (!autocompletedInput.endsWith("/")) {
+                    newInputPortion = newInputPortion + (word.quote() != 0 ? String.valueOf(word.quote()) : "") + " ";
+                }
+                input.append(newInputPortion);
+                System.out.print(newInputPortion);
+            }
+            default -> {
+                String autocompletedInput = completion.commonPrefix();
+                if (autocompletedInput.length() > completed.length()) {
+                    String newInputPortion = quoteForWord(autocompletedInput.substring(completed.length()),
+                            word.quote());
+                    input.append(newInputPortion);
+                    System.out.print(newInputPortion);
+                } else {
+                    if (consecutiveTabsCount == 1) {
+                        System.out.print(BELL_CHARACTER);
+                    } else {
+                        System.out.println();
+                        System.out.println(String.join(" " + " ", autocompleteOptions));
+                        System.out.print(PROMPT + input);
+                    }
+                }
+            }
+        }
+    }
+
+    // The word under the cursor with its quotes and escapes resolved, the quote left
+    // open at its end if any, and whether it's where a command name goes.
+    record CompletionWord(String value, char quote, Boolean isCommand) {
+    }
+
+    static CompletionWord findCompletionWord(CharSequence line) {
+        StringBuilder value = new StringBuilder();
+        char quote = 0;
+        Boolean isInWord = false;
+        Boolean isRedirectTarget = false;
+        int wordsInStage = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                } else if (quote == '"' && c == '\\' && i + 1 < line.length()
+                        && Lexer.isEscapableInDoubleQuotes(line.charAt(i + 1))) {
+                    value.append(line.charAt(++i));
+                } else {
+                    value.append(c);
+                }
+                continue;
+            }
+
+            if (Character.isWhitespace(c) || c == '|' || c == '&' || c == '<' || c == '>') {
+                if (isInWord) {
+                    wordsInStage += isRedirectTarget ? 0 : 1;
+                    isRedirectTarget = false;
+                }
+                if (c == '|' || c == '&') {
+                    wordsInStage = 0;
+                } else if (c == '<' || c == '>') {
+                    isRedirectTarget = true;
+                }
+                isInWord = false;
+                value.setLength(0);
+                continue;
+            }
+
+            isInWord = true;
+            if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '\\') {
+                if (i + 1 < line.length()) {
+                    value.append(line.charAt(++i));
+                }
+            } else {
+                value.append(c);
+            }
+        }
+
+        return new CompletionWord(value.toString(), quote, wordsInStage == 0 && !isRedirectTarget);
+    }
+
+    // Escapes what completion adds so it reads back as the same text in the word.
+    private static String quoteForWord(String text, char quote) {
+        StringBuilder quoted = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            Boolean needsEscape = quote == 0
+                    ? " \t\n'\"\\|&<>$`;()*?[]#~!{}".indexOf(c) >= 0
+                    : quote == '"' && "\"\\$`".indexOf(c) >= 0;
+            if (needsEscape) {
+                quoted.append('\\');
+            }
+            quoted.append(c);
+        }
+        return quoted.toString();
+    }
+
+    // Ctrl-R: every key refines the query and shows the newest entry matching it,
+    // another Ctrl-R moves on to older matches. Ctrl-G gives up and puts back what
+    // was typed before; any other key keeps the match in `input` and is returned
+    // for the caller to handle.
+    private static int searchHistory(History history, StringBuilder input) throws IOException {
+        String original = input.toString();
+        StringBuilder query = new StringBuilder();
+        int match = -1;
+        Boolean isFailing = false;
+        String shown = PROMPT + input;
+        shown = showSearch(shown, query, "", isFailing);
+
+        while (true) {
+            if (!KEY_READER.hasBufferedInput()) {
+                System.out.flush();
+            }
+            int key = KEY_READER.next();
+            int searchFrom = history.size();
+            if (key == 18) {
+                searchFrom = match >= 0 ? match : history.size();
+            } else if (key == 127) {
+                if (query.length() > 0) {
+                    query.setLength(query.length() - Character.charCount(query.codePointBefore(query.length())));
+                }
+            } else if (key >= 32) {
+                query.appendCodePoint(key);
+            } else {
+                if (key == 7) {
+                    input.setLength(0);
+                    input.append(original);
+                    key = KeyReader.ESCAPE;
+                }
+                clearShown(shown);
+                System.out.print(PROMPT + input);
+                return key;
+            }
+
+            int found = history.index.search(query.toString(), searchFrom);
+            // older copies of the entry already shown aren't worth a keystroke
+            while (key == 18 && found >= 0 && history.get(found).contentEquals(input)) {
+                found = history.index.search(query.toString(), found);
+            }
+            isFailing = found < 0 && query.length() > 0;
+            if (found >= 0) {
+                match = found;
+                input.setLength(0);
+                input.append(history.get(found));
+            } else if (query.isEmpty()) {
+                match = -1;
+            }
+            shown = showSearch(shown, query, match >= 0 ? input : "", isFailing);
+        }
+    }
+
+    private static String showSearch(String shown, CharSequence query, CharSequence match, Boolean isFailing) {
+        clearShown(shown);
+        String search = String.format("(%sreverse-i-search)`%s': %s", isFailing ? "failed " : "", query, match);
+        System.out.print(search);
+        return search;
+    }
+
+    private static void replaceLine(StringBuilder input, String line) {
+        clearShown(PROMPT + input);
+        input.setLength(0);
+        input.append(line);
+        System.out.print(PROMPT + input);
+    }
+
+    // Takes the cursor back to where `shown` starts, counting the rows it wrapped
+    // onto, and clears from there to the end of the screen.
+    private static void clearShown(String shown) {
+        int rows = 0;
+        for (String line : shown.split("\n", -1)) {
+            int width = line.codePointCount(0, line.length());
+            rows += width == 0 ? 1 : (width - 1) / terminalColumns + 1;
+        }
+        System.out.print('\r');
+        if (rows > 1) {
+            System.out.print("\u001b[" + (rows - 1) + "A");
+        }
+        System.out.print("\u001b[J");
+    }
+
+    // Terminals send line breaks inside a paste as carriage returns.
+    private static void normalizePastedLineBreaks(StringBuilder input, int from) {
+        int to = from;
+        for (int i = from; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c == '\r') {
+                if (i + 1 < input.length() && input.charAt(i + 1) == '\n') {
+                    continue;
+                }
+                c = '\n';
+            }
+            input.setCharAt(to++, c);
+        }
+        input.setLength(to);
+    }
+
+    private static Boolean endsWithUnpairedBackslash(CharSequence input) {
+        int backslashes = 0;
+        for (int i = input.length() - 1; i >= 0 && input.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 1;
+    }
+
+    static String findLongestCommonPrefix(List<String> coll, String basePrefix) {
+        if (coll.isEmpty()) {
             return basePrefix;
         }
 
-        for (int prefixLen = shortestEntry.length(); prefixLen > basePrefix.length(); prefixLen--) {
-            String testPrefix = shortestEntry.substring(0, prefixLen);
-            if (coll.stream().allMatch(entry -> entry.startsWith(testPrefix))) {
-                return testPrefix;
+        String first = coll.getFirst();
+        int prefixLen = first.length();
+        for (String entry : coll) {
+            prefixLen = Math.min(prefixLen, entry.length());
+            int i = 0;
+            while (i < prefixLen && entry.charAt(i) == first.charAt(i)) {
+                i++;
+            }
+            prefixLen = i;
+            if (prefixLen <= basePrefix.length()) {
+                return basePrefix;
             }
         }
 
-        return basePrefix;
+        return first.substring(0, prefixLen);
     }
 }
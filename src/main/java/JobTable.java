@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+class JobTable {
+    final TreeMap<Integer, Job> jobs = new TreeMap<>();
+
+    record Job(int id, String commandLine, List<Process> processes,
+            CompletableFuture<ExecutionResult> completion) {
+
+        Boolean isDone() {
+            return completion.isDone();
+        }
+
+        ExecutionResult await() {
+            return completion.join();
+        }
+
+        String status() {
+            if (!isDone()) {
+                return "Running";
+            }
+            int exitCode = await().exitCode;
+            return exitCode == 0 ? "Done" : String.format("Exit %d", exitCode);
+        }
+    }
+
+    synchronized Job add(String commandLine, Pipeline pipeline, CompletableFuture<ExecutionResult> completion) {
+        int id = jobs.isEmpty() ? 1 : jobs.lastKey() + 1;
+        Job job = new Job(id, commandLine, List.copyOf(pipeline.processes), completion);
+        jobs.put(id, job);
+        return job;
+    }
+
+    synchronized List<Job> list() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    synchronized void remove(Job job) {
+        jobs.remove(job.id());
+    }
+
+    // Accepts %n, n, %%, %+ and %- like bash does. No spec means the current job.
+    synchronized Job find(String spec) {
+        if (jobs.isEmpty()) {
+            return null;
+        }
+        if (spec == null || spec.equals("%%") || spec.equals("%+")) {
+            return jobs.lastEntry().getValue();
+        }
+        if (spec.equals("%-")) {
+            Map.Entry<Integer, Job> previous = jobs
+                    .lowerEntry(jobs.lastKey());
+            return previous != null ? previous.getValue() : null;
+        }
+        try {
+            return jobs.get(Integer.parseInt(spec.startsWith("%") ? spec.substring(1) : spec));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    synchronized char marker(Job job) {
+        if (job.id() == jobs.lastKey()) {
+            return '+';
+        }
+        Integer previous = jobs.lowerKey(jobs.lastKey());
+        return previous != null && job.id() == previous ? '-' : ' ';
+    }
+
+    // Finished jobs are reported once, at the next prompt, and then forgotten.
+    synchronized List<String> takeCompletedReports() {
+        List<String> reports = new ArrayList<>();
+        for (Job job : list()) {
+            if (job.isDone()) {
+                reports.add(format(job, false));
+                jobs.remove(job.id());
+            }
+        }
+        return reports;
+    }
+
+    synchronized String format(Job job, Boolean isListing) {
+        return String.format("[%d]%c  %-24s%s%s", job.id(), marker(job), job.status(), job.commandLine(),
+                isListing && !job.isDone() ? " &" : "");
+    }
+}
@@ -0,0 +1,189 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// Reads whatever the terminal has available in one go and hands it out
+// key by key. Printable keys are returned as code points, everything
+// recognised from an escape sequence as one of the negative key codes.
+class KeyReader {
+    static final int BUFFER_SIZE = 4096;
+    static final int END_OF_INPUT = -1;
+    static final int ESCAPE = -2;
+    static final int ARROW_UP = -3;
+    static final int ARROW_DOWN = -4;
+    static final int ARROW_RIGHT = -5;
+    static final int ARROW_LEFT = -6;
+    static final int HOME = -7;
+    static final int END = -8;
+    static final int DELETE = -9;
+    static final int PASTE_START = -10;
+    static final int PASTE_END = -11;
+    static final int UNKNOWN_SEQUENCE = -12;
+    static final char ESCAPE_CHARACTER = '\u001b';
+    static final String PASTE_END_SEQUENCE = "\u001b[201~";
+
+    final InputStream source;
+    final byte[] bytes = new byte[BUFFER_SIZE];
+    final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+    final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    KeyReader(InputStream source) {
+        this.source = source;
+        chars.flip();
+    }
+
+    boolean hasBufferedInput() throws IOException {
+        return chars.hasRemaining() || source.available() > 0;
+    }
+
+    int next() throws IOException {
+        int c = readChar();
+        if (c == ESCAPE_CHARACTER) {
+            return readEscapeSequence();
+        }
+        if (Character.isHighSurrogate((char) c)) {
+            int low = readChar();
+            return low == END_OF_INPUT ? END_OF_INPUT : Character.toCodePoint((char) c, (char) low);
+        }
+        return c;
+    }
+
+    // Copies everything up to the bracketed-paste end marker straight from the
+    // decoded buffer into `target`, without going key by key. The marker may
+    // arrive split across reads, so an escape sequence is always read to its end;
+    // any other sequence is part of what was pasted.
+    int readPaste(StringBuilder target) throws IOException {
+        while (true) {
+            if (!chars.hasRemaining() && !fill()) {
+                return END_OF_INPUT;
+            }
+
+            char[] array = chars.array();
+            int from = chars.position();
+            int to = from;
+            while (to < chars.limit() && array[to] != ESCAPE_CHARACTER) {
+                to++;
+            }
+            target.append(array, from, to - from);
+            chars.position(to);
+
+            if (chars.hasRemaining()) {
+                chars.get();
+                int key = readPastedEscapeSequence(target);
+                if (key != UNKNOWN_SEQUENCE) {
+                    return key;
+                }
+            }
+        }
+    }
+
+    // Reads an escape sequence to its end, however long the rest of it takes to
+    // arrive. The end marker gives PASTE_END; any other sequence goes into
+    // `target` as it was typed, ESC included, and gives UNKNOWN_SEQUENCE.
+    private int readPastedEscapeSequence(StringBuilder target) throws IOException {
+        StringBuilder sequence = new StringBuilder().append(ESCAPE_CHARACTER);
+        int c = readChar();
+        if (c == '[') {
+            sequence.append('[');
+            c = readChar();
+            while ((c >= '0' && c <= '9') || c == ';') {
+                sequence.append((char) c);
+                c = readChar();
+            }
+        }
+        if (c == END_OF_INPUT) {
+            target.append(sequence);
+            return END_OF_INPUT;
+        }
+        if (c == ESCAPE_CHARACTER) {
+            // the start of the next sequence, left for the next round
+            chars.position(chars.position() - 1);
+        } else {
+            sequence.append((char) c);
+        }
+        if (sequence.toString().equals(PASTE_END_SEQUENCE)) {
+            return PASTE_END;
+        }
+        target.append(sequence);
+        return UNKNOWN_SEQUENCE;
+    }
+
+    private int readEscapeSequence() throws IOException {
+        if (!hasBufferedInput()) {
+            return ESCAPE;
+        }
+
+        int introducer = readChar();
+        if (introducer == 'O') {
+            return finalCharacterToKey(readChar());
+        }
+        if (introducer != '[') {
+            return UNKNOWN_SEQUENCE;
+        }
+
+        int parameter = 0;
+        int c = readChar();
+        while ((c >= '0' && c <= '9') || c == ';') {
+            parameter = c == ';' ? 0 : parameter * 10 + (c - '0');
+            c = readChar();
+        }
+
+        if (c == '~') {
+            return switch (parameter) {
+                case 1, 7 -> HOME;
+                case 4, 8 -> END;
+                case 3 -> DELETE;
+                case 200 -> PASTE_START;
+                case 201 -> PASTE_END;
+                default -> UNKNOWN_SEQUENCE;
+            };
+        }
+        return finalCharacterToKey(c);
+    }
+
+    private static int finalCharacterToKey(int c) {
+        return switch (c) {
+            case 'A' -> ARROW_UP;
+            case 'B' -> ARROW_DOWN;
+            case 'C' -> ARROW_RIGHT;
+            case 'D' -> ARROW_LEFT;
+            case 'H' -> HOME;
+            case 'F' -> END;
+            case END_OF_INPUT -> END_OF_INPUT;
+            default -> UNKNOWN_SEQUENCE;
+        };
+    }
+
+    private int readChar() throws IOException {
+        if (!chars.hasRemaining() && !fill()) {
+            return END_OF_INPUT;
+        }
+        return chars.get();
+    }
+
+    // Blocks until at least one whole character is decoded. Bytes of a character
+    // that is split across reads stay in the byte buffer for the next round.
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (chars.position() == 0) {
+            int bytesRead = source.read(bytes, byteBuffer.position(), byteBuffer.remaining());
+            if (bytesRead == -1) {
+                chars.flip();
+                return false;
+            }
+            byteBuffer.position(byteBuffer.position() + bytesRead);
+            byteBuffer.flip();
+            decoder.decode(byteBuffer, chars, false);
+            byteBuffer.compact();
+        }
+        chars.flip();
+        return true;
+    }
+}
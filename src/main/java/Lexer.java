@@ -0,0 +1,282 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits a command line into words and operators in a single pass over its chars.
+// Quotes and backslashes are resolved here, so words come out in their final form.
+class Lexer {
+    enum TokenType {
+        WORD,
+        PIPE,
+        BACKGROUND,
+        REDIRECT,
+        // `;` or a line break
+        SEPARATOR,
+        AND,
+        OR,
+        OPEN_PARENTHESIS,
+        CLOSE_PARENTHESIS
+    }
+
+    // `glob` is set for words with an unquoted `*`, `?` or `[`: the word as a
+    // pattern, with everything that was quoted or escaped escaped again.
+    // `substitutions` is set for words with a `$(...)` or a variable, which are left
+    // out of `text`. `start` and `end` locate the token in the line.
+    record Token(TokenType type, String text, String glob, List<Substitution> substitutions, int start, int end) {
+        Boolean isWord(String word) {
+            return type == TokenType.WORD && substitutions == null && text.equals(word);
+        }
+    }
+
+    // A `$(...)` or a variable whose value goes into the word at `offset`; exactly
+    // one of `command` and `variable` is set. Only values that weren't inside double
+    // quotes are split into several words.
+    record Substitution(int offset, String command, String variable, Boolean isQuoted) {
+    }
+
+    final char[] chars;
+    final StringBuilder word = new StringBuilder();
+    final StringBuilder glob = new StringBuilder();
+    Boolean hasGlob = false;
+    List<Substitution> substitutions;
+    int position = 0;
+
+    Lexer(String line) {
+        this.chars = line.toCharArray();
+    }
+
+    static List<Token> tokenize(String line) {
+        return new Lexer(line).tokenize();
+    }
+
+    List<Token> tokenize() {
+        List<Token> tokens = new ArrayList<>();
+        while (true) {
+            while (position < chars.length && chars[position] != '\n' && Character.isWhitespace(chars[position])) {
+                position++;
+            }
+            if (position < chars.length && chars[position] == '#') {
+                while (position < chars.length && chars[position] != '\n') {
+                    position++;
+                }
+            }
+            if (position >= chars.length) {
+                return tokens;
+            }
+
+            int start = position;
+            char c = chars[position];
+            if (c == '|' || (c == '&' && !isRedirectStart())) {
+                Boolean isDoubled = position + 1 < chars.length && chars[position + 1] == c;
+                position += isDoubled ? 2 : 1;
+                TokenType type = c == '|'
+                        ? isDoubled ? TokenType.OR : TokenType.PIPE
+                        : isDoubled ? TokenType.AND : TokenType.BACKGROUND;
+                tokens.add(operator(type, start));
+            } else if (c == ';' || c == '\n') {
+                position++;
+                tokens.add(operator(TokenType.SEPARATOR, start));
+            } else if (c == '(' || c == ')') {
+                position++;
+                tokens.add(operator(c == '(' ? TokenType.OPEN_PARENTHESIS : TokenType.CLOSE_PARENTHESIS, start));
+            } else if (isRedirectStart()) {
+                String operator = readRedirectOperator();
+                tokens.add(new Token(TokenType.REDIRECT, operator, null, null, start, position));
+            } else {
+                String text = readWord();
+                // a word taking in command output isn't also matched as a pattern
+                String pattern = hasGlob && substitutions == null ? glob.toString() : null;
+                tokens.add(new Token(TokenType.WORD, text, pattern,
+                        substitutions != null ? List.copyOf(substitutions) : null, start, position));
+            }
+        }
+    }
+
+    private Token operator(TokenType type, int start) {
+        return new Token(type, new String(chars, start, position - start), null, null, start, position);
+    }
+
+    // An operator is '>' or '<', doubled for append/heredoc, optionally preceded by
+    // the descriptor it applies to: 1 or 2 for output, 0 for input. A single one
+    // followed by '&', or '&>', duplicates a descriptor; those are read whole so
+    // the parser can turn them down, rather than split at a background '&'.
+    private boolean isRedirectStart() {
+        char c = chars[position];
+        if (c == '>' || c == '<') {
+            return true;
+        }
+        if (position + 1 < chars.length) {
+            char next = chars[position + 1];
+            return ((c == '1' || c == '2' || c == '&') && next == '>') || (c == '0' && next == '<');
+        }
+        return false;
+    }
+
+    private String readRedirectOperator() {
+        int start = position;
+        if (chars[position] != '>' && chars[position] != '<') {
+            position++;
+        }
+        char direction = chars[position++];
+        if (position < chars.length && chars[position] == direction) {
+            position++;
+        } else if (position < chars.length && chars[position] == '&' && chars[start] != '&') {
+            position++;
+        }
+        return new String(chars, start, position - start);
+    }
+
+    private String readWord() {
+        word.setLength(0);
+        glob.setLength(0);
+        hasGlob = false;
+        substitutions = null;
+        while (position < chars.length) {
+            char c = chars[position];
+            if (Character.isWhitespace(c) || c == '|' || c == '&' || c == ';' || c == '(' || c == ')' || c == '>'
+                    || c == '<') {
+                break;
+            }
+            if (isSubstitutionStart()) {
+                readSubstitution(false);
+                continue;
+            }
+            if (isVariableStart()) {
+                readVariable(false);
+                continue;
+            }
+            position++;
+
+            if (c == '\'') {
+                while (position < chars.length && chars[position] != '\'') {
+                    appendQuoted(chars[position++]);
+                }
+                position++;
+            } else if (c == '"') {
+                while (position < chars.length && chars[position] != '"') {
+                    if (isSubstitutionStart()) {
+                        readSubstitution(true);
+                        continue;
+                    }
+                    if (isVariableStart()) {
+                        readVariable(true);
+                        continue;
+                    }
+                    char quoted = chars[position++];
+                    if (quoted == '\\' && position < chars.length && isEscapableInDoubleQuotes(chars[position])) {
+                        quoted = chars[position++];
+                    }
+                    appendQuoted(quoted);
+                }
+                position++;
+            } else if (c == '\\') {
+                if (position < chars.length) {
+                    appendQuoted(chars[position++]);
+                }
+            } else {
+                word.append(c);
+                glob.append(c);
+                hasGlob |= c == '*' || c == '?' || c == '[';
+            }
+        }
+        return word.toString();
+    }
+
+    private boolean isSubstitutionStart() {
+        return chars[position] == '$' && position + 1 < chars.length && chars[position + 1] == '(';
+    }
+
+    // Reads up to the parenthesis closing the one at the start. Quotes and escapes
+    // inside are skipped over, not resolved; the command is parsed on its own later.
+    // An unclosed substitution runs to the end of the line.
+    private void readSubstitution(Boolean isQuoted) {
+        position += 2;
+        int start = position;
+        int depth = 1;
+        while (position < chars.length) {
+            char c = chars[position++];
+            if (c == '\\') {
+                position++;
+            } else if (c == '\'') {
+                while (position < chars.length && chars[position] != '\'') {
+                    position++;
+                }
+                position++;
+            } else if (c == '"') {
+                while (position < chars.length && chars[position] != '"') {
+                    position += chars[position] == '\\' ? 2 : 1;
+                }
+                position++;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                break;
+            }
+        }
+        int end = depth == 0 ? position - 1 : Math.min(position, chars.length);
+        addSubstitution(new Substitution(word.length(), new String(chars, start, end - start), null, isQuoted));
+    }
+
+    // `$NAME`, `${NAME}`, a positional parameter like `$1`, or `$?`, `$#`, `$@` and
+    // `$*`. A `$` starting none of them is taken as it is.
+    private boolean isVariableStart() {
+        if (chars[position] != '$' || position + 1 == chars.length) {
+            return false;
+        }
+        char next = chars[position + 1];
+        if (next == '{') {
+            int nameEnd = readName(position + 2);
+            return nameEnd > position + 2 && nameEnd < chars.length && chars[nameEnd] == '}';
+        }
+        return isSpecialParameter(next) || isNameStart(next);
+    }
+
+    private void readVariable(Boolean isQuoted) {
+        position++;
+        Boolean isBraced = chars[position] == '{';
+        int start = isBraced ? position + 1 : position;
+        int end = readName(start);
+        position = isBraced ? end + 1 : end;
+        addSubstitution(new Substitution(word.length(), null, new String(chars, start, end - start), isQuoted));
+    }
+
+    private int readName(int from) {
+        int end = from;
+        if (end < chars.length && isSpecialParameter(chars[end])) {
+            return end + 1;
+        }
+        if (end < chars.length && isNameStart(chars[end])) {
+            end++;
+            while (end < chars.length && (isNameStart(chars[end]) || Character.isDigit(chars[end]))) {
+                end++;
+            }
+        }
+        return end;
+    }
+
+    private static boolean isSpecialParameter(char c) {
+        return c == '?' || c == '#' || c == '@' || c == '*' || (c >= '0' && c <= '9');
+    }
+
+    static boolean isNameStart(char c) {
+        return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private void addSubstitution(Substitution substitution) {
+        if (substitutions == null) {
+            substitutions = new ArrayList<>();
+        }
+        substitutions.add(substitution);
+    }
+
+    private void appendQuoted(char c) {
+        word.append(c);
+        if (Glob.isSpecial(c)) {
+            glob.append('\\');
+        }
+        glob.append(c);
+    }
+
+    static boolean isEscapableInDoubleQuotes(char c) {
+        return c == '\\' || c == '$' || c == '"' || c == '\n';
+    }
+}
@@ -0,0 +1,14 @@
+// Thrown by break and continue, and caught by the loop `levels` loops out.
+public class LoopControlException extends UserInitiatedException {
+    final Boolean isBreak;
+    final int levels;
+
+    LoopControlException(Boolean isBreak, int levels) {
+        this.isBreak = isBreak;
+        this.levels = levels;
+    }
+
+    LoopControlException outer() {
+        return new LoopControlException(isBreak, levels - 1);
+    }
+}
@@ -1,5 +1,32 @@
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
 public class Main {
     public static void main(String[] args) throws Exception {
-        new Shell().run();
+        List<String> arguments = Arrays.asList(args);
+
+        if (arguments.size() == 2 && arguments.get(0).equals("--server")) {
+            new ShellServer(Path.of(arguments.get(1))).serve();
+            return;
+        }
+
+        if (arguments.size() >= 2 && arguments.get(0).equals("--client")) {
+            System.exit(ShellClient.run(Path.of(arguments.get(1)), arguments.subList(2, arguments.size())));
+        }
+
+        Shell shell = new Shell();
+        if (!arguments.isEmpty() || System.console() == null) {
+            shell.out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+            shell.err = new PrintStream(new ErrorOutputStream(shell.out, new FileOutputStream(FileDescriptor.err)),
+                    true);
+            System.exit(shell.runNonInteractive(arguments));
+        }
+
+        shell.run();
     }
 }
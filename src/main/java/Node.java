@@ -0,0 +1,293 @@
+import java.util.List;
+import java.util.Map;
+
+// A parsed command line. Nodes hold everything that can be worked out from the
+// text alone - words, patterns, redirects - so a loop body or a function runs its
+// nodes again rather than its text. Every node leaves its status in lastExitCode.
+// Nodes are shared through the parse cache, so nothing about a run is kept in them.
+abstract class Node {
+    abstract void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException;
+
+    // The commands that take a heredoc, in the order their bodies follow the line.
+    void addHeredocCommands(List<Command> commands) {
+    }
+
+    // A pipeline, or a single command, run as the shell always has.
+    static class Command extends Node {
+        final CommandLine commandLine;
+        final String source;
+
+        Command(CommandLine commandLine, String source) {
+            this.commandLine = commandLine;
+            this.source = source;
+        }
+
+        Command inBackground() {
+            return new Command(new CommandLine(commandLine.stages, true), source);
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            shell.runCommand(this, metrics);
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            for (Input stage : commandLine.stages) {
+                if (stage.heredocDelimiter != null) {
+                    commands.add(this);
+                    return;
+                }
+            }
+        }
+    }
+
+    static class Sequence extends Node {
+        final List<Node> nodes;
+
+        Sequence(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            for (Node node : nodes) {
+                node.execute(shell, metrics);
+            }
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            for (Node node : nodes) {
+                node.addHeredocCommands(commands);
+            }
+        }
+    }
+
+    // Each node after the first runs after `&&` if the one before succeeded, after
+    // `||` if it failed.
+    static class AndOr extends Node {
+        final List<Node> nodes;
+        final List<Boolean> isAnd;
+
+        AndOr(List<Node> nodes, List<Boolean> isAnd) {
+            this.nodes = nodes;
+            this.isAnd = isAnd;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            nodes.getFirst().execute(shell, metrics);
+            for (int i = 1; i < nodes.size(); i++) {
+                if ((shell.lastExitCode == 0) == isAnd.get(i - 1)) {
+                    nodes.get(i).execute(shell, metrics);
+                }
+            }
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            for (Node node : nodes) {
+                node.addHeredocCommands(commands);
+            }
+        }
+    }
+
+    // `elif` adds a condition and a body; `otherwise` is the else part, if any.
+    static class If extends Node {
+        final List<Node> conditions;
+        final List<Node> bodies;
+        final Node otherwise;
+
+        If(List<Node> conditions, List<Node> bodies, Node otherwise) {
+            this.conditions = conditions;
+            this.bodies = bodies;
+            this.otherwise = otherwise;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            for (int i = 0; i < conditions.size(); i++) {
+                conditions.get(i).execute(shell, metrics);
+                if (shell.lastExitCode == 0) {
+                    bodies.get(i).execute(shell, metrics);
+                    return;
+                }
+            }
+            if (otherwise != null) {
+                otherwise.execute(shell, metrics);
+            } else {
+                shell.lastExitCode = 0;
+            }
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            for (int i = 0; i < conditions.size(); i++) {
+                conditions.get(i).addHeredocCommands(commands);
+                bodies.get(i).addHeredocCommands(commands);
+            }
+            if (otherwise != null) {
+                otherwise.addHeredocCommands(commands);
+            }
+        }
+    }
+
+    static class Loop extends Node {
+        final Node condition;
+        final Node body;
+        final Boolean isUntil;
+
+        Loop(Node condition, Node body, Boolean isUntil) {
+            this.condition = condition;
+            this.body = body;
+            this.isUntil = isUntil;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            int exitCode = 0;
+            shell.loopDepth++;
+            try {
+                while (true) {
+                    condition.execute(shell, metrics);
+                    if ((shell.lastExitCode == 0) == isUntil) {
+                        break;
+                    }
+                    try {
+                        body.execute(shell, metrics);
+                    } catch (LoopControlException e) {
+                        exitCode = 0;
+                        if (e.levels > 1) {
+                            throw e.outer();
+                        }
+                        if (e.isBreak) {
+                            break;
+                        }
+                        continue;
+                    }
+                    exitCode = shell.lastExitCode;
+                }
+            } finally {
+                shell.loopDepth--;
+            }
+            shell.lastExitCode = exitCode;
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            condition.addHeredocCommands(commands);
+            body.addHeredocCommands(commands);
+        }
+    }
+
+    // `items` is null for a loop over the positional parameters.
+    static class For extends Node {
+        final String variable;
+        final Input items;
+        final Node body;
+
+        For(String variable, Input items, Node body) {
+            this.variable = variable;
+            this.items = items;
+            this.body = body;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            List<String> values = items != null
+                    ? items.withSubstitutions(shell).withExpandedGlobs(shell.cwd).args
+                    : shell.positionalArgs;
+            int exitCode = 0;
+            shell.loopDepth++;
+            try {
+                for (String value : values) {
+                    shell.setVariable(variable, value, false);
+                    try {
+                        body.execute(shell, metrics);
+                    } catch (LoopControlException e) {
+                        exitCode = 0;
+                        if (e.levels > 1) {
+                            throw e.outer();
+                        }
+                        if (e.isBreak) {
+                            break;
+                        }
+                        continue;
+                    }
+                    exitCode = shell.lastExitCode;
+                }
+            } finally {
+                shell.loopDepth--;
+            }
+            shell.lastExitCode = exitCode;
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            body.addHeredocCommands(commands);
+        }
+    }
+
+    static class FunctionDefinition extends Node {
+        final String name;
+        final Node body;
+
+        FunctionDefinition(String name, Node body) {
+            this.name = name;
+            this.body = body;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) {
+            shell.functions.put(name, new FunctionBody(body, shell.heredocs));
+            shell.lastExitCode = 0;
+        }
+
+        @Override
+        void addHeredocCommands(List<Command> commands) {
+            body.addHeredocCommands(commands);
+        }
+    }
+
+    // A defined function: its body keeps the heredocs that followed the definition,
+    // whichever input it's called from.
+    static class FunctionBody extends Node {
+        final Node body;
+        final Map<Command, String[]> heredocs;
+
+        FunctionBody(Node body, Map<Command, String[]> heredocs) {
+            this.body = body;
+            this.heredocs = heredocs;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) throws UserInitiatedException {
+            Map<Command, String[]> callerHeredocs = shell.heredocs;
+            shell.heredocs = heredocs;
+            try {
+                body.execute(shell, metrics);
+            } finally {
+                shell.heredocs = callerHeredocs;
+            }
+        }
+    }
+
+    // A line that didn't parse. An incomplete one may still be finished by the
+    // lines that follow it.
+    static class Invalid extends Node {
+        final String message;
+        final Boolean isIncomplete;
+
+        Invalid(String message, Boolean isIncomplete) {
+            this.message = message;
+            this.isIncomplete = isIncomplete;
+        }
+
+        @Override
+        void execute(Shell shell, CommandMetrics metrics) {
+            Printer.print(shell.err, message);
+            shell.lastExitCode = 2;
+        }
+    }
+}
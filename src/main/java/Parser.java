@@ -0,0 +1,338 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Turns a line's tokens into the tree the shell runs: lists joined by `;`, `&&`
+// and `||`, pipelines, if/while/until/for, `{ ...; }` groups and function
+// definitions. Reserved words only count where a command could start, so
+// `echo done` is just an echo.
+class Parser {
+    static final Set<String> COMPOUND_STARTS = Set.of("if", "while", "until", "for", "{");
+    static final Set<String> RESERVED_WORDS = Set.of("if", "then", "elif", "else", "fi", "while", "until", "for",
+            "do", "done", "{", "}");
+    final String line;
+    final List<Lexer.Token> tokens;
+    int position = 0;
+
+    // Incomplete when the line ends inside a construct, which more lines may finish.
+    static class SyntaxError extends Exception {
+        final Boolean isIncomplete;
+
+        SyntaxError(String message, Boolean isIncomplete) {
+            super(message);
+            this.isIncomplete = isIncomplete;
+        }
+    }
+
+    Parser(String line) {
+        this.line = line;
+        this.tokens = Lexer.tokenize(line);
+    }
+
+    static Node parse(String line) {
+        Parser parser = new Parser(line);
+        try {
+            Node node = parser.parseList(Set.of());
+            if (!parser.isAtEnd()) {
+                throw parser.unexpected();
+            }
+            return node;
+        } catch (SyntaxError e) {
+            return new Node.Invalid(e.getMessage(), e.isIncomplete);
+        }
+    }
+
+    private Node parseList(Set<String> terminators) throws SyntaxError {
+        List<Node> items = new ArrayList<>();
+        skipLineBreaks();
+        while (!isAtEnd() && !isAtWord(terminators)) {
+            Node item = parseAndOr();
+            if (isAt(Lexer.TokenType.BACKGROUND)) {
+                // only pipelines are run as jobs
+                if (!(item instanceof Node.Command command)) {
+                    throw unexpected();
+                }
+                item = command.inBackground();
+                position++;
+            } else if (isAt(Lexer.TokenType.SEPARATOR)) {
+                position++;
+            } else if (!isAtEnd() && !isAtWord(terminators)) {
+                throw unexpected();
+            }
+            items.add(item);
+            skipLineBreaks();
+        }
+        return items.size() == 1 ? items.getFirst() : new Node.Sequence(items);
+    }
+
+    private Node parseAndOr() throws SyntaxError {
+        List<Node> nodes = new ArrayList<>();
+        List<Boolean> isAnd = new ArrayList<>();
+        nodes.add(parseCommand());
+        while (isAt(Lexer.TokenType.AND) || isAt(Lexer.TokenType.OR)) {
+            isAnd.add(isAt(Lexer.TokenType.AND));
+            position++;
+            skipLineBreaks();
+            nodes.add(parseCommand());
+        }
+        return nodes.size() == 1 ? nodes.getFirst() : new Node.AndOr(nodes, isAnd);
+    }
+
+    private Node parseCommand() throws SyntaxError {
+        if (isAtEnd()) {
+            throw incomplete();
+        }
+        Lexer.Token token = tokens.get(position);
+        if (isAtWord(RESERVED_WORDS)) {
+            if (!COMPOUND_STARTS.contains(token.text())) {
+                throw unexpected();
+            }
+            Node compound = parseCompound();
+            // compound commands are neither piped nor redirected
+            if (isAt(Lexer.TokenType.PIPE) || isAt(Lexer.TokenType.REDIRECT)) {
+                throw unexpected();
+            }
+            return compound;
+        }
+        if (token.type() == Lexer.TokenType.WORD && position + 1 < tokens.size()
+                && tokens.get(position + 1).type() == Lexer.TokenType.OPEN_PARENTHESIS) {
+            return parseFunctionDefinition();
+        }
+        return parsePipeline();
+    }
+
+    private Node parseCompound() throws SyntaxError {
+        return switch (tokens.get(position++).text()) {
+            case "if" -> parseIf();
+            case "while" -> parseLoop(false);
+            case "until" -> parseLoop(true);
+            case "for" -> parseFor();
+            default -> {
+                Node body = parseList(Set.of("}"));
+                expect("}");
+                yield body;
+            }
+        };
+    }
+
+    private Node parseIf() throws SyntaxError {
+        List<Node> conditions = new ArrayList<>();
+        List<Node> bodies = new ArrayList<>();
+        while (true) {
+            conditions.add(parseList(Set.of("then")));
+            expect("then");
+            bodies.add(parseList(Set.of("elif", "else", "fi")));
+            if (!isAtWord(Set.of("elif"))) {
+                break;
+            }
+            position++;
+        }
+        Node otherwise = null;
+        if (isAtWord(Set.of("else"))) {
+            position++;
+            otherwise = parseList(Set.of("fi"));
+        }
+        expect("fi");
+        return new Node.If(conditions, bodies, otherwise);
+    }
+
+    private Node parseLoop(Boolean isUntil) throws SyntaxError {
+        Node condition = parseList(Set.of("do"));
+        expect("do");
+        Node body = parseList(Set.of("done"));
+        expect("done");
+        return new Node.Loop(condition, body, isUntil);
+    }
+
+    // The words after `in` are kept as the arguments of an Input, so they're
+    // expanded the way any command's arguments are. Without `in` the loop goes
+    // over the positional parameters.
+    private Node parseFor() throws SyntaxError {
+        if (isAtEnd()) {
+            throw incomplete();
+        }
+        Lexer.Token variable = tokens.get(position);
+        if (variable.type() != Lexer.TokenType.WORD || !Input.NAME_PATTERN.matcher(variable.text()).matches()) {
+            throw unexpected();
+        }
+        position++;
+        skipLineBreaks();
+
+        Input items = null;
+        if (isAtWord(Set.of("in"))) {
+            position++;
+            List<String> words = new ArrayList<>(List.of("for"));
+            List<String> globs = new ArrayList<>();
+            List<List<Lexer.Substitution>> substitutions = new ArrayList<>();
+            globs.add(null);
+            substitutions.add(null);
+            while (isAt(Lexer.TokenType.WORD)) {
+                Lexer.Token word = tokens.get(position++);
+                words.add(word.text());
+                globs.add(word.glob());
+                substitutions.add(word.substitutions());
+            }
+            items = Input.createInput(words, globs, substitutions, Map.of(), Map.of(), null);
+        }
+        if (isAt(Lexer.TokenType.SEPARATOR)) {
+            position++;
+        }
+        skipLineBreaks();
+        expect("do");
+        Node body = parseList(Set.of("done"));
+        expect("done");
+        return new Node.For(variable.text(), items, body);
+    }
+
+    private Node parseFunctionDefinition() throws SyntaxError {
+        String name = tokens.get(position).text();
+        if (!Input.NAME_PATTERN.matcher(name).matches()) {
+            throw unexpected();
+        }
+        position += 2;
+        if (isAtEnd()) {
+            throw incomplete();
+        }
+        if (!isAt(Lexer.TokenType.CLOSE_PARENTHESIS)) {
+            throw unexpected();
+        }
+        position++;
+        skipLineBreaks();
+        if (isAtEnd()) {
+            throw incomplete();
+        }
+        if (!isAtWord(COMPOUND_STARTS)) {
+            throw unexpected();
+        }
+        return new Node.FunctionDefinition(name, parseCompound());
+    }
+
+    // Simple commands joined by pipes, each with its words and redirects.
+    private Node parsePipeline() throws SyntaxError {
+        int start = tokens.get(position).start();
+        List<Input> stages = new ArrayList<>();
+        List<String> commandAndArgs = new ArrayList<>();
+        List<String> globs = new ArrayList<>();
+        List<List<Lexer.Substitution>> substitutions = new ArrayList<>();
+        Map<RedirectType, File> redirects = new HashMap<>();
+        Map<RedirectType, Input.RedirectTarget> redirectTargets = new HashMap<>();
+        String heredocDelimiter = null;
+
+        while (!isAtEnd()) {
+            Lexer.Token token = tokens.get(position);
+            if (token.type() == Lexer.TokenType.WORD) {
+                commandAndArgs.add(token.text());
+                globs.add(token.glob());
+                substitutions.add(token.substitutions());
+                position++;
+            } else if (token.type() == Lexer.TokenType.REDIRECT) {
+                if (token.text().contains("&")) {
+                    throw unsupportedDuplication(token);
+                }
+                position++;
+                if (!isAt(Lexer.TokenType.WORD)) {
+                    throw isAtEnd() ? new SyntaxError(syntaxErrorNear("newline"), false) : unexpected();
+                }
+                Lexer.Token target = tokens.get(position++);
+                RedirectType redirectType = RedirectType.fromString(token.text());
+                if (redirectType == RedirectType.INPUT_APPEND) {
+                    heredocDelimiter = target.text();
+                } else {
+                    redirects.put(redirectType, new File(target.text()));
+                    if (target.substitutions() != null) {
+                        redirectTargets.put(redirectType,
+                                new Input.RedirectTarget(target.text(), target.substitutions()));
+                    } else {
+                        redirectTargets.remove(redirectType);
+                    }
+                }
+            } else if (token.type() == Lexer.TokenType.PIPE) {
+                if (commandAndArgs.isEmpty()) {
+                    throw unexpected();
+                }
+                stages.add(Input.createInput(commandAndArgs, globs, substitutions, redirects, redirectTargets,
+                        heredocDelimiter));
+                commandAndArgs = new ArrayList<>();
+                globs = new ArrayList<>();
+                substitutions = new ArrayList<>();
+                redirects = new HashMap<>();
+                redirectTargets = new HashMap<>();
+                heredocDelimiter = null;
+                position++;
+                skipLineBreaks();
+                if (isAtEnd()) {
+                    throw incomplete();
+                }
+                if (isAtWord(RESERVED_WORDS)) {
+                    throw unexpected();
+                }
+            } else {
+                break;
+            }
+        }
+
+        if (commandAndArgs.isEmpty() && redirects.isEmpty() && heredocDelimiter == null) {
+            throw unexpected();
+        }
+        stages.add(Input.createInput(commandAndArgs, globs, substitutions, redirects, redirectTargets,
+                heredocDelimiter));
+        String source = line.substring(start, tokens.get(position - 1).end());
+        return new Node.Command(new CommandLine(List.copyOf(stages), false), source);
+    }
+
+    private void expect(String word) throws SyntaxError {
+        if (isAtEnd()) {
+            throw incomplete();
+        }
+        if (!tokens.get(position).isWord(word)) {
+            throw unexpected();
+        }
+        position++;
+    }
+
+    private void skipLineBreaks() {
+        while (isAt(Lexer.TokenType.SEPARATOR) && tokens.get(position).text().equals("\n")) {
+            position++;
+        }
+    }
+
+    private Boolean isAtEnd() {
+        return position >= tokens.size();
+    }
+
+    private Boolean isAt(Lexer.TokenType type) {
+        return !isAtEnd() && tokens.get(position).type() == type;
+    }
+
+    private Boolean isAtWord(Set<String> words) {
+        Lexer.Token token = isAtEnd() ? null : tokens.get(position);
+        return token != null && token.type() == Lexer.TokenType.WORD && token.substitutions() == null
+                && words.contains(token.text());
+    }
+
+    private SyntaxError unexpected() {
+        String text = tokens.get(position).text();
+        return new SyntaxError(syntaxErrorNear(text.equals("\n") ? "newline" : text), false);
+    }
+
+    // `2>&1`, `>&2`, `&>file` and the like: only files are redirect targets.
+    private SyntaxError unsupportedDuplication(Lexer.Token operator) {
+        String text = operator.text();
+        if (position + 1 < tokens.size() && tokens.get(position + 1).type() == Lexer.TokenType.WORD) {
+            text += tokens.get(position + 1).text();
+        }
+        return new SyntaxError(String.format("syntax error: `%s': duplicating a file descriptor isn't supported",
+                text), false);
+    }
+
+    private static SyntaxError incomplete() {
+        return new SyntaxError("syntax error: unexpected end of file", true);
+    }
+
+    private static String syntaxErrorNear(String token) {
+        return String.format("syntax error near unexpected token `%s'", token);
+    }
+}
@@ -0,0 +1,103 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Completes arguments as paths relative to the shell's working directory. Listings
+// are kept per directory and relisted only once the directory's mtime moves on; a
+// listing already being fetched in the background is waited for, not repeated.
+class PathCompletion {
+    final Shell shell;
+    final ConcurrentHashMap<File, CompletableFuture<Listing>> listings = new ConcurrentHashMap<>();
+
+    // Directory names end with a slash.
+    record Listing(FileTime modified, NavigableSet<String> names) {
+    }
+
+    PathCompletion(Shell shell) {
+        this.shell = shell;
+    }
+
+    void prefetch(File dir) {
+        Thread.ofVirtual().start(() -> fetch(dir));
+    }
+
+    // `word` is an argument as typed, quotes and escapes already resolved. The
+    // matches complete its last path segment.
+    CompletionIndex.Completion complete(String word) {
+        // the home directory's own name isn't what was typed, so `~` completes to `~/`
+        if (word.equals("~") && shell.homeDir != null) {
+            return new CompletionIndex.Completion(List.of("~/"), "~/");
+        }
+        String expanded = shell.homeDir != null ? shell.normalizePath(word) : word;
+        int segmentStart = expanded.lastIndexOf('/') + 1;
+        String segment = expanded.substring(segmentStart);
+        File dir = segmentStart == 0
+                ? shell.cwd
+                : shell.resolvePath(new File(segmentStart == 1 ? "/" : expanded.substring(0, segmentStart - 1)));
+
+        List<String> matches = new ArrayList<>();
+        for (String name : fetch(dir).join().names().subSet(segment, true, segment + Character.MAX_VALUE, false)) {
+            if (!name.startsWith(".") || segment.startsWith(".")) {
+                matches.add(name);
+            }
+        }
+        if (matches.isEmpty()) {
+            return new CompletionIndex.Completion(matches, segment);
+        }
+        String commonPrefix = Input.findLongestCommonPrefix(List.of(matches.getFirst(), matches.getLast()), segment);
+        return new CompletionIndex.Completion(matches, commonPrefix);
+    }
+
+    CompletableFuture<Listing> fetch(File dir) {
+        while (true) {
+            CompletableFuture<Listing> current = listings.get(dir);
+            if (current != null && (!current.isDone() || isCurrent(current.join(), dir))) {
+                return current;
+            }
+            CompletableFuture<Listing> next = new CompletableFuture<>();
+            Boolean isClaimed = current == null
+                    ? listings.putIfAbsent(dir, next) == null
+                    : listings.replace(dir, current, next);
+            if (isClaimed) {
+                next.complete(list(dir));
+                return next;
+            }
+        }
+    }
+
+    private static Boolean isCurrent(Listing listing, File dir) {
+        return listing.modified().equals(modifiedTime(dir.toPath()));
+    }
+
+    private static Listing list(File dir) {
+        Path path = dir.toPath();
+        FileTime modified = modifiedTime(path);
+        NavigableSet<String> names = new TreeSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                names.add(Files.isDirectory(entry) ? name + "/" : name);
+            }
+        } catch (IOException | RuntimeException e) {
+            // nothing to complete from a directory that can't be read
+        }
+        return new Listing(modified, names);
+    }
+
+    private static FileTime modifiedTime(Path path) {
+        try {
+            return Files.getLastModifiedTime(path);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+}
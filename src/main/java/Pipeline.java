@@ -0,0 +1,176 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+class Pipeline {
+    static final Executor VIRTUAL_THREADS = command -> Thread.ofVirtual().start(command);
+    static final File NULL_DEVICE = new File("/dev/null");
+    static final int BUILTIN_PIPE_SIZE = 65536;
+    final List<Program> programs;
+    final List<List<String>> args;
+    final List<Process> processes = new ArrayList<>();
+    final List<Thread> threads = new ArrayList<>();
+    final ExecutionResult[] builtinResults;
+    InputStream upstream;
+    Boolean isBackground = false;
+    long spawnNanos;
+
+    Pipeline(List<Program> programs, List<List<String>> args) {
+        this.programs = programs;
+        this.args = args;
+        this.builtinResults = new ExecutionResult[programs.size()];
+    }
+
+    ExecutionResult execute(Shell shell) {
+        return start(shell).join();
+    }
+
+    // Launches every stage and returns right away. The result completes once all
+    // processes have exited and every builtin and output pump has finished.
+    CompletableFuture<ExecutionResult> start(Shell shell) {
+        try {
+            int stage = 0;
+            while (stage < programs.size()) {
+                if (programs.get(stage) instanceof Executable) {
+                    stage = startRun(shell, stage, false);
+                    continue;
+                }
+
+                Program builtin = programs.get(stage);
+                builtin.in = upstream;
+                upstream = null;
+                boolean isLast = stage + 1 == programs.size();
+                if (!isLast && programs.get(stage + 1) instanceof Executable) {
+                    int runEnd = startRun(shell, stage + 1, true);
+                    int runLength = runEnd - stage - 1;
+                    builtin.out = new PrintStream(processes.get(processes.size() - runLength).getOutputStream());
+                    threads.add(startBuiltin(shell, stage, true));
+                    stage = runEnd;
+                    continue;
+                }
+
+                if (!isLast) {
+                    // the next builtin reads this one's output through an in-memory pipe
+                    PipedInputStream pipe = new PipedInputStream(BUILTIN_PIPE_SIZE);
+                    builtin.out = new PrintStream(new PipedOutputStream(pipe));
+                    upstream = pipe;
+                }
+                threads.add(startBuiltin(shell, stage, !isLast));
+                stage++;
+            }
+        } catch (IOException e) {
+            processes.forEach(Process::destroy);
+            return CompletableFuture.completedFuture(new ExecutionError(Executable.describeStartFailure(e)));
+        }
+
+        return CompletableFuture
+                .allOf(processes.stream().map(Process::onExit).toArray(CompletableFuture[]::new))
+                .thenApplyAsync(ignored -> awaitStages(), VIRTUAL_THREADS);
+    }
+
+    private ExecutionResult awaitStages() {
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            return programs.getLast() instanceof Executable
+                    ? new ExecutionResult(processes.getLast().exitValue())
+                    : new ExecutionResult(builtinResults[programs.size() - 1].exitCode);
+        } catch (InterruptedException e) {
+            processes.forEach(Process::destroy);
+            return new ExecutionError(String.format("Error while running pipeline.\n%s", e.getMessage()));
+        }
+    }
+
+    // Starts the consecutive external stages beginning at `from` as one OS-level pipeline
+    // and returns the index of the first stage after them.
+    private int startRun(Shell shell, int from, boolean isFedByBuiltin) throws IOException {
+        int to = from;
+        List<ProcessBuilder> builders = new ArrayList<>();
+        while (to < programs.size() && programs.get(to) instanceof Executable executable) {
+            ProcessBuilder builder = executable.createProcessBuilder(shell, args.get(to));
+            if (to > from || isFedByBuiltin) {
+                builder.redirectInput(ProcessBuilder.Redirect.PIPE);
+            } else if (isBackground && !executable.hasOwnInput()) {
+                builder.redirectInput(ProcessBuilder.Redirect.from(NULL_DEVICE));
+            }
+            if (to < programs.size() - 1) {
+                builder.redirectOutput(ProcessBuilder.Redirect.PIPE);
+            }
+            builders.add(builder);
+            to++;
+        }
+
+        long spawnStart = System.nanoTime();
+        List<Process> run = ProcessBuilder.startPipeline(builders);
+        spawnNanos += System.nanoTime() - spawnStart;
+        processes.addAll(run);
+        Executable first = (Executable) programs.get(from);
+        if (!isFedByBuiltin && (!isBackground || first.hasOwnInput())) {
+            Thread inputFeed = first.startInputFeed(shell, run.getFirst());
+            if (inputFeed != null) {
+                threads.add(inputFeed);
+            }
+        }
+        for (int i = 0; i < run.size(); i++) {
+            Program program = programs.get(from + i);
+            if (builders.get(i).redirectError() == ProcessBuilder.Redirect.PIPE) {
+                threads.add(StreamPump.start(run.get(i).getErrorStream(), program.err));
+            }
+        }
+
+        Process last = run.getLast();
+        if (to < programs.size()) {
+            upstream = last.getInputStream();
+        } else if (builders.getLast().redirectOutput() == ProcessBuilder.Redirect.PIPE) {
+            threads.add(StreamPump.start(last.getInputStream(), programs.getLast().out));
+        }
+        return to;
+    }
+
+    private Thread startBuiltin(Shell shell, int stage, boolean closeOutput) {
+        Program builtin = programs.get(stage);
+        return Thread.ofVirtual().start(() -> {
+            builtinResults[stage] = new ExecutionResult();
+            try {
+                ExecutionError redirectError = builtin.openRedirects();
+                if (redirectError != null) {
+                    Printer.print(builtin.err, redirectError.message);
+                    builtinResults[stage] = redirectError;
+                    return;
+                }
+                ExecutionResult result = builtin.execute(shell, args.get(stage));
+                if (result instanceof ExecutionError executionError) {
+                    builtin.print(builtin.getErrorRedirect(), executionError.message);
+                }
+                builtinResults[stage] = result;
+            } catch (ExitException e) {
+                // builtins in a pipeline run as if in a subshell, so exit only ends the stage
+                builtinResults[stage] = new ExecutionResult(e.exitCode);
+            } catch (UserInitiatedException e) {
+                builtinResults[stage] = new ExecutionResult(1);
+            } finally {
+                builtin.closeSinks();
+                if (closeOutput) {
+                    builtin.out.close();
+                } else {
+                    builtin.out.flush();
+                }
+                if (builtin.in != null) {
+                    try {
+                        builtin.in.close();
+                    } catch (IOException e) {
+                        // the upstream process already finished writing
+                    }
+                }
+            }
+        });
+    }
+}
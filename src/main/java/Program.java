@@ -1,21 +1,46 @@
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 abstract class Program implements Printer {
     String name;
+    File cwd;
+    final Map<RedirectType, File> redirects;
     public File inputRedirect;
     public File inputRedirectAppend;
     public File outputRedirect;
     public File outputRedirectAppend;
     public File errorRedirect;
     public File errorRedirectAppend;
+    InputStream in;
+    String heredoc;
+    byte[] heredocBytes;
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    long spawnNanos;
+    // for external programs, when it isn't the shell's own
+    Environment environment;
+    final Map<File, RedirectSink> sinks = new HashMap<>();
 
     Program(String name, Map<RedirectType, File> redirects) {
         if (name != null) {
             this.name = name;
         }
+        this.redirects = redirects;
         if (redirects != null) {
+            inputRedirect = redirects.get(RedirectType.INPUT);
             outputRedirect = redirects.get(RedirectType.OUTPUT);
             outputRedirectAppend = redirects.get(RedirectType.OUTPUT_APPEND);
             errorRedirect = redirects.get(RedirectType.ERROR);
@@ -31,6 +56,70 @@ abstract class Program implements Printer {
                 : new Redirect(inputRedirect, RedirectType.INPUT);
     }
 
+    Boolean hasOwnInput() {
+        return in != null || heredoc != null || inputRedirect != null;
+    }
+
+    // The heredoc body is encoded once, however many times the program reads it.
+    byte[] getHeredocBytes() {
+        if (heredocBytes == null) {
+            heredocBytes = heredoc.getBytes(StandardCharsets.UTF_8);
+        }
+        return heredocBytes;
+    }
+
+    File resolveRedirect(File file) {
+        return file.isAbsolute() || cwd == null ? file : new File(cwd, file.getPath());
+    }
+
+    // Builtins open their output targets when they start, so the files exist even if
+    // nothing gets printed and an unwritable target stops the command from running.
+    ExecutionError openRedirects() {
+        for (Redirect redirect : List.of(getOutputRedirect(), getErrorRedirect())) {
+            if (redirect.file == null) {
+                continue;
+            }
+            try {
+                getSink(redirect);
+            } catch (IOException e) {
+                return new ExecutionError(String.format("%s: %s", redirect.file, describeFailure(e)));
+            }
+        }
+        return null;
+    }
+
+    // The reason part of an NIO exception, worded the way the shell reports files.
+    static String describeFailure(IOException e) {
+        if (e instanceof NoSuchFileException) {
+            return "No such file or directory";
+        }
+        if (e instanceof AccessDeniedException) {
+            return "Permission denied";
+        }
+        if (e instanceof FileSystemException fileSystemException && fileSystemException.getReason() != null) {
+            return fileSystemException.getReason();
+        }
+        return e.getMessage();
+    }
+
+    InputStream openInput(Shell shell) throws FileNotFoundException {
+        if (in != null) {
+            return in;
+        }
+        if (heredoc != null) {
+            return new ByteArrayInputStream(getHeredocBytes());
+        }
+        if (inputRedirect != null) {
+            return new FileInputStream(shell.resolvePath(inputRedirect));
+        }
+        // the shell's own input outlives the command, however the command is done with it
+        return new FilterInputStream(shell.in) {
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     public Redirect getOutputRedirect() {
         return (outputRedirectAppend != null)
                 ? new Redirect(outputRedirectAppend, RedirectType.OUTPUT_APPEND)
@@ -42,4 +131,59 @@ abstract class Program implements Printer {
                 ? new Redirect(errorRedirectAppend, RedirectType.ERROR_APPEND)
                 : new Redirect(errorRedirect, RedirectType.ERROR);
     }
+
+    @Override
+    public void print(Redirect redirect, String data) {
+        switch (redirect.type) {
+            case OUTPUT, OUTPUT_APPEND -> {
+                if (redirect.file != null) {
+                    printToSink(redirect, data);
+                } else {
+                    Printer.print(out, data);
+                }
+            }
+
+            case ERROR, ERROR_APPEND -> {
+                if (redirect.file != null) {
+                    printToSink(redirect, data);
+                } else {
+                    Printer.print(err, data);
+                }
+            }
+
+            case INPUT, INPUT_APPEND -> throw new IllegalArgumentException("Can't print to an input redirect");
+            default -> throw new IllegalArgumentException("Unexpected value: " + redirect.type);
+        }
+    }
+
+    private void printToSink(Redirect redirect, String data) {
+        try {
+            getSink(redirect).println(data);
+        } catch (IOException e) {
+            Printer.print(err, String.format("Error writing to file %s: %s", redirect.file, e.getMessage()));
+        }
+    }
+
+    // Each redirect target is opened once per command and shared between
+    // stdout and stderr when both point at the same file.
+    synchronized RedirectSink getSink(Redirect redirect) throws IOException {
+        File target = resolveRedirect(redirect.file).getAbsoluteFile();
+        RedirectSink sink = sinks.get(target);
+        if (sink == null) {
+            sink = RedirectSink.open(target, RedirectType.isAppend(redirect.type));
+            sinks.put(target, sink);
+        }
+        return sink;
+    }
+
+    synchronized void closeSinks() {
+        for (RedirectSink sink : sinks.values()) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                Printer.print(err, String.format("Error writing to file %s: %s", sink.file, e.getMessage()));
+            }
+        }
+        sinks.clear();
+    }
 }
@@ -2,8 +2,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 public enum RedirectType {
-    INPUT("1<"),
-    INPUT_APPEND("1<<"),
+    INPUT("0<"),
+    INPUT_APPEND("0<<"),
     OUTPUT("1>"),
     OUTPUT_APPEND("1>>"),
     ERROR("2>"),
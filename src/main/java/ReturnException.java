@@ -0,0 +1,7 @@
+public class ReturnException extends UserInitiatedException {
+    final int exitCode;
+
+    ReturnException(int exitCode) {
+        this.exitCode = exitCode;
+    }
+}
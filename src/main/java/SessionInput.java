@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Standard input of a ShellServer session, filled from the client's STDIN frames.
+// The queue is bounded, so a client sending faster than the session reads is held back.
+// Blocking happens under a ReentrantLock rather than a monitor so it never pins a carrier thread.
+class SessionInput extends InputStream {
+    static final int QUEUE_CAPACITY = 64;
+    static final long POLL_INTERVAL_MILLIS = 50;
+    static final byte[] END = new byte[0];
+    final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    final ReentrantLock lock = new ReentrantLock();
+    byte[] current;
+    int position;
+    volatile boolean isEnded = false;
+
+    // Waits while the queue is full, but not for a session that has ended.
+    void offer(byte[] chunk) throws InterruptedException {
+        byte[] next = chunk.length == 0 ? END : chunk;
+        while (!isEnded) {
+            if (chunks.offer(next, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    // The session is over: anything still queued is dropped, and nobody waits to add more.
+    void end() {
+        isEnded = true;
+        chunks.clear();
+        chunks.offer(END);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            while (current == null || position == current.length) {
+                current = chunks.take();
+                position = 0;
+                if (current == END) {
+                    chunks.offer(END);
+                    current = null;
+                    return -1;
+                }
+            }
+            int count = Math.min(length, current.length - position);
+            System.arraycopy(current, position, bytes, offset, count);
+            position += count;
+            return count;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Feeds the session's input to a child for as long as it runs. The forwarder
+    // waits for input like any reader and is interrupted when the child exits, so a
+    // chunk it couldn't hand over is put back for the next reader.
+    Thread forwardTo(Process process) {
+        Thread forwarder = Thread.ofVirtual().start(() -> {
+            OutputStream destination = process.getOutputStream();
+            byte[] chunk = null;
+            try (destination) {
+                lock.lock();
+                try {
+                    if (current != null && position < current.length) {
+                        destination.write(current, position, current.length - position);
+                        destination.flush();
+                        current = null;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                while (true) {
+                    chunk = chunks.take();
+                    if (chunk == END) {
+                        chunks.offer(END);
+                        return;
+                    }
+                    destination.write(chunk);
+                    destination.flush();
+                    chunk = null;
+                }
+            } catch (IOException | InterruptedException e) {
+                // the child stopped reading its input
+                putBack(chunk);
+            }
+        });
+        process.onExit().thenRun(forwarder::interrupt);
+        return forwarder;
+    }
+
+    private void putBack(byte[] chunk) {
+        if (chunk == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (current == null || position == current.length) {
+                current = chunk;
+                position = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
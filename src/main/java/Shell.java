@@ -1,16 +1,99 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
 public class Shell {
+    static final String ENABLE_BRACKETED_PASTE = "\u001b[?2004h";
+    static final String DISABLE_BRACKETED_PASTE = "\u001b[?2004l";
+    static final String METRICS_LOG_VARIABLE = "SHELL_METRICS_LOG";
+    static final String HISTORY_FILE_NAME = ".shell_history";
     File cwd;
     String homeDir;
+    int lastExitCode = 0;
+    InputStream in = System.in;
+    PrintStream out = System.out;
+    PrintStream err = System.err;
+    Environment environment;
+    CommandHash commandHash;
+    Boolean isInteractive = false;
+    final JobTable jobs = new JobTable();
+    BufferedReader scriptReader;
+    File metricsLog;
+    int captureLimit;
+    Map<String, Node> functions = new HashMap<>();
+    // heredoc bodies of the input being run, by the command they belong to
+    Map<Node.Command, String[]> heredocs = new IdentityHashMap<>();
+    List<String> positionalArgs = List.of();
+    int loopDepth = 0;
+    int functionDepth = 0;
+    // while a function call's input redirect or heredoc stands in for `in`
+    Boolean isInputRedirected = false;
+    // when other shells run in the same process, as under the daemon
+    Boolean isSharedProcess = false;
 
     Shell() {
         cwd = new File(System.getProperty("user.dir"));
+        environment = Environment.fromSystem();
+        commandHash = CommandHash.forPath(environment.get("PATH"));
         homeDir = System.getenv("HOME");
+        metricsLog = fileOrNull(System.getenv(METRICS_LOG_VARIABLE));
+        captureLimit = CommandSubstitution.readLimit(System.getenv(CommandSubstitution.CAPTURE_LIMIT_VARIABLE));
+    }
+
+    Shell(File cwd, InputStream in, PrintStream out, PrintStream err, Map<String, String> environment) {
+        this.cwd = cwd;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+        this.environment = Environment.of(environment);
+        this.commandHash = CommandHash.forPath(environment.get("PATH"));
+        this.homeDir = environment.get("HOME");
+        this.metricsLog = fileOrNull(environment.get(METRICS_LOG_VARIABLE));
+        this.captureLimit = CommandSubstitution.readLimit(environment.get(CommandSubstitution.CAPTURE_LIMIT_VARIABLE));
+    }
+
+    // Runs a command substitution: a change of directory, an exit or a function
+    // definition stays in the copy, and the command line is only logged once, by
+    // the shell it's part of.
+    private Shell(Shell parent, PrintStream out) {
+        this.cwd = parent.cwd;
+        this.homeDir = parent.homeDir;
+        this.in = parent.in;
+        this.isInputRedirected = parent.isInputRedirected;
+        this.isSharedProcess = parent.isSharedProcess;
+        this.out = out;
+        this.err = parent.err;
+        this.environment = parent.environment;
+        this.commandHash = parent.commandHash;
+        this.lastExitCode = parent.lastExitCode;
+        // the substitution is all there is to run, nothing comes after it
+        this.scriptReader = new BufferedReader(Reader.nullReader());
+        this.captureLimit = parent.captureLimit;
+        this.functions = new HashMap<>(parent.functions);
+        this.positionalArgs = parent.positionalArgs;
     }
 
     @SuppressWarnings({ "CallToPrintStackTrace", "UseSpecificCatch" })
@@ -18,76 +101,612 @@ public class Shell {
         Executable stty = null;
         String ttyConfig = null;
         Boolean isError = false;
-        PrintStream rawModeStream = new PrintStream(System.out) {
-            @Override
-            public void print(String s) {
-                super.print(s.replaceAll("\n", "\r\n"));
-            }
-
-            @Override
-            public void println() {
-                super.print("\r\n");
-            }
-
-            @Override
-            public void println(String s) {
-                print(s);
-                println();
-            }
-        };
+        int exitCode = 0;
+        PrintStream rawModeStream = new PrintStream(
+                new TerminalOutputStream(new FileOutputStream(FileDescriptor.out)));
         System.setOut(rawModeStream);
         System.setErr(rawModeStream);
+        out = rawModeStream;
+        err = rawModeStream;
+        isInteractive = true;
+        Input.commandIndex = new CompletionIndex(commandHash, BuiltinCommand.COMMANDS);
 
         try {
-            stty = new Executable("stty", Map.of(RedirectType.INPUT, new File("/dev/tty")));
+            stty = new Executable("stty", Map.of(RedirectType.INPUT, new File("/dev/tty")), commandHash);
             stty.toggleShouldReturnOutput();
             ttyConfig = stty.execute(this, Arrays.asList("-g")).value.strip();
             if (ttyConfig == null || ttyConfig.length() == 0) {
                 throw new Exception("Couldn't safely set up input handling.");
             }
-            stty.execute(this, Arrays.asList("raw", "-echo"));
+            Input.terminalColumns = enterRawMode(stty);
+            System.out.print(ENABLE_BRACKETED_PASTE);
+            History history = loadHistory();
+            PathCompletion paths = new PathCompletion(this);
+            Boolean isFirstPrompt = true;
 
             while (true) {
-                System.out.print("$ ");
-                String input = Input.readInput();
+                for (String report : jobs.takeCompletedReports()) {
+                    Printer.print(out, report);
+                }
+                System.out.print(Input.PROMPT);
+                if (isFirstPrompt) {
+                    prepareInBackground(history, paths);
+                    isFirstPrompt = false;
+                }
+                String input = Input.readInput(history, paths);
                 System.out.println();
+                try {
+                    history.add(input);
+                } catch (IOException e) {
+                    Printer.print(err, String.format("Error writing to history file %s: %s", history.file,
+                            e.getMessage()));
+                }
                 processInput(input);
+                System.out.flush();
             }
         } catch (Error e) {
             isError = true;
         } catch (UserInitiatedException e) {
             if (e instanceof AbortException) {
                 isError = true;
+            } else if (e instanceof ExitException exitException) {
+                exitCode = exitException.exitCode;
             }
         } catch (Exception e) {
             e.printStackTrace();
             isError = true;
         } finally {
             if (ttyConfig != null) {
+                System.out.print(DISABLE_BRACKETED_PASTE);
+                System.out.flush();
                 stty.execute(this, Arrays.asList(ttyConfig));
             }
         }
 
-        System.exit(isError ? 1 : 0);
+        System.out.flush();
+        System.exit(isError ? 1 : exitCode);
+    }
+
+    // One stty both switches the terminal over and, for `size`, prints the rows
+    // and the columns.
+    private int enterRawMode(Executable stty) {
+        ExecutionResult size = stty.execute(this, Arrays.asList("raw", "-echo", "size"));
+        String[] dimensions = size.value != null ? size.value.strip().split(" ") : new String[0];
+        try {
+            int columns = dimensions.length == 2 ? Integer.parseInt(dimensions[1]) : 0;
+            return columns > 0 ? columns : Input.terminalColumns;
+        } catch (NumberFormatException e) {
+            return Input.terminalColumns;
+        }
+    }
+
+    // Only completion and history search need these, so they're built once the
+    // first prompt is up rather than before it.
+    private void prepareInBackground(History history, PathCompletion paths) {
+        Input.commandIndex.buildInBackground();
+        history.index.buildInBackground();
+        paths.prefetch(cwd);
+    }
+
+    // Kept in $HISTFILE, or ~/.shell_history. A history that can't be read is
+    // reported and replaced with one that lives only as long as the session.
+    private History loadHistory() {
+        String historyFile = System.getenv("HISTFILE");
+        File file = historyFile != null && !historyFile.isEmpty()
+                ? new File(historyFile)
+                : homeDir != null ? new File(homeDir, HISTORY_FILE_NAME) : null;
+        try {
+            return History.load(file);
+        } catch (IOException e) {
+            Printer.print(err, String.format("Error reading history file %s: %s", file, e.getMessage()));
+            return new History(null);
+        }
+    }
+
+    // Non-interactive mode: no tty setup, every line goes straight to processInput.
+    // Runs `-c command`, a script file, or whatever comes in on the input stream.
+    int runNonInteractive(List<String> args) {
+        if (!args.isEmpty() && args.getFirst().equals("-c")) {
+            if (args.size() < 2) {
+                Printer.print(err, "-c: option requires an argument");
+                return 2;
+            }
+            return runCommand(args.get(1));
+        }
+
+        if (!args.isEmpty()) {
+            File script = new File(args.getFirst());
+            if (!script.isAbsolute()) {
+                script = new File(cwd, args.getFirst());
+            }
+            try (BufferedReader reader = new BufferedReader(new FileReader(script))) {
+                return runScript(reader);
+            } catch (FileNotFoundException e) {
+                Printer.print(err, String.format("%s: No such file or directory", args.getFirst()));
+                return 127;
+            } catch (IOException e) {
+                Printer.print(err, e.getMessage());
+                return 1;
+            }
+        }
+
+        return runScript(new BufferedReader(new InputStreamReader(in)));
+    }
+
+    int runCommand(String command) {
+        return runScript(new BufferedReader(new StringReader(command)));
     }
 
+    int runScript(BufferedReader reader) {
+        scriptReader = reader;
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank() || line.stripLeading().startsWith("#")) {
+                    continue;
+                }
+                processInput(line);
+                out.flush();
+            }
+            return lastExitCode;
+        } catch (ExitException e) {
+            return e.exitCode;
+        } catch (UserInitiatedException e) {
+            return 1;
+        } catch (IOException e) {
+            Printer.print(err, e.getMessage());
+            return 1;
+        } finally {
+            out.flush();
+        }
+    }
+
+    // A line that leaves a construct open, like a `for` without its `done`, is
+    // joined with the lines after it until the construct is complete.
     void processInput(String input) throws UserInitiatedException {
-        Input preparedInput = Input.fromString(input);
-        String command = preparedInput.command;
-        List<String> commandArgs = preparedInput.args;
-        Program program;
+        if (input.isBlank()) {
+            return;
+        }
+        long parseNanos = 0;
+        Node script;
+        // heredoc bodies come right after the line they're on, ahead of any line
+        // that continues the command
+        List<String> bodies = new ArrayList<>();
+        String line = input;
+        while (true) {
+            readHeredocBodies(line, bodies);
+            long parseStart = System.nanoTime();
+            script = Input.parse(input);
+            parseNanos += System.nanoTime() - parseStart;
+            if (!(script instanceof Node.Invalid invalid) || !invalid.isIncomplete) {
+                break;
+            }
+            line = readNextLine();
+            if (line == null) {
+                break;
+            }
+            input = input + "\n" + line;
+        }
+
+        heredocs = assignHeredocs(script, bodies);
+        commandHash.validate();
+        CommandMetrics metrics = new CommandMetrics(input, metricsLog != null, isSharedProcess);
+        metrics.parseNanos = parseNanos;
+        metrics.start();
         try {
-            program = (BuiltinCommand.isBuiltin(command))
-                    ? BuiltinCommand.fromName(command, preparedInput.redirects)
-                    : new Executable(command, preparedInput.redirects);
-        } catch (IllegalArgumentException e) {
-            Printer.print(System.err, String.format("%s: command not found", command));
+            script.execute(this, metrics);
+        } finally {
+            metrics.stop(lastExitCode);
+            recordMetrics(metrics);
+        }
+    }
+
+    void runCommand(Node.Command command, CommandMetrics metrics) throws UserInitiatedException {
+        CommandLine commandLine = command.commandLine;
+        String[] bodies = heredocs.get(command);
+        // Parsed stages are shared through the parse cache, so they're copied rather than filled in.
+        List<Input> stages = new ArrayList<>(commandLine.stages.size());
+        for (int i = 0; i < commandLine.stages.size(); i++) {
+            Input stage = commandLine.stages.get(i);
+            if (stage.heredocDelimiter != null) {
+                stage = stage.withHeredoc(bodies != null ? bodies[i] : "");
+            }
+            stages.add(stage.withSubstitutions(this).withAssignmentsSeparated().withExpandedGlobs(cwd));
+        }
+        if (stages.size() > 1 || commandLine.isBackground) {
+            processPipeline(stages, commandLine.isBackground, command.source, metrics);
+            return;
+        }
+
+        Input preparedInput = stages.getFirst();
+        if (preparedInput.command == null) {
+            if (preparedInput.assignments != null) {
+                assignVariables(preparedInput.assignments);
+                lastExitCode = 0;
+            }
             return;
         }
-        ExecutionResult result = program.execute(this, commandArgs);
+        Node function = functions.get(preparedInput.command);
+        if (function != null) {
+            callFunction(function, preparedInput, metrics);
+            return;
+        }
+        long resolveStart = System.nanoTime();
+        Program program = createProgram(preparedInput);
+        metrics.resolveNanos += System.nanoTime() - resolveStart;
+        if (program == null) {
+            lastExitCode = 127;
+            return;
+        }
+        try {
+            ExecutionError redirectError = program.openRedirects();
+            if (redirectError != null) {
+                Printer.print(err, redirectError.message);
+                lastExitCode = redirectError.exitCode;
+                return;
+            }
+            ExecutionResult result = program.execute(this, preparedInput.args);
+            if (result instanceof ExecutionError executionError) {
+                program.print(program.getErrorRedirect(), executionError.message);
+            }
+            lastExitCode = result.exitCode;
+        } finally {
+            metrics.spawnNanos += program.spawnNanos;
+            program.closeSinks();
+        }
+    }
+
+    // The arguments become the positional parameters for as long as the body runs.
+    // The call's redirects and heredoc take the place of the shell's own streams,
+    // and the assignments ahead of it are exported, until the body is done.
+    private void callFunction(Node body, Input call, CommandMetrics metrics) throws UserInitiatedException {
+        List<String> callerArgs = positionalArgs;
+        int callerLoopDepth = loopDepth;
+        InputStream callerIn = in;
+        PrintStream callerOut = out;
+        PrintStream callerErr = err;
+        Boolean callerIsInputRedirected = isInputRedirected;
+        Environment callerEnvironment = environment;
+        List<Closeable> opened = new ArrayList<>();
+        try {
+            ExecutionError redirectError = redirectStreams(call, opened);
+            if (redirectError != null) {
+                Printer.print(callerErr, redirectError.message);
+                lastExitCode = redirectError.exitCode;
+                return;
+            }
+            if (call.assignments != null) {
+                for (String assignment : call.assignments) {
+                    int separator = assignment.indexOf('=');
+                    setVariable(assignment.substring(0, separator), assignment.substring(separator + 1), true);
+                }
+            }
+            positionalArgs = List.copyOf(call.args);
+            loopDepth = 0;
+            functionDepth++;
+            try {
+                body.execute(this, metrics);
+            } catch (ReturnException e) {
+                lastExitCode = e.exitCode;
+            } finally {
+                functionDepth--;
+            }
+        } finally {
+            if (call.assignments != null) {
+                for (String assignment : call.assignments) {
+                    restoreVariable(assignment.substring(0, assignment.indexOf('=')), callerEnvironment);
+                }
+            }
+            loopDepth = callerLoopDepth;
+            positionalArgs = callerArgs;
+            in = callerIn;
+            out = callerOut;
+            err = callerErr;
+            isInputRedirected = callerIsInputRedirected;
+            for (Closeable stream : opened) {
+                try {
+                    stream.close();
+                } catch (IOException e) {
+                    Printer.print(callerErr, e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Output and error to the same file share one stream, as they would one file
+    // description. What couldn't be opened comes back as the error to report.
+    private ExecutionError redirectStreams(Input call, List<Closeable> opened) {
+        Map<RedirectType, File> redirects = call.redirects != null ? call.redirects : Map.of();
+        File inputFile = redirects.get(RedirectType.INPUT);
+        File outputFile = redirects.get(RedirectType.OUTPUT_APPEND) != null
+                ? redirects.get(RedirectType.OUTPUT_APPEND)
+                : redirects.get(RedirectType.OUTPUT);
+        File errorFile = redirects.get(RedirectType.ERROR_APPEND) != null
+                ? redirects.get(RedirectType.ERROR_APPEND)
+                : redirects.get(RedirectType.ERROR);
+        File failed = null;
+        try {
+            if (call.heredoc != null) {
+                in = new ByteArrayInputStream(call.heredoc.getBytes(StandardCharsets.UTF_8));
+                isInputRedirected = true;
+            } else if (inputFile != null) {
+                failed = inputFile;
+                in = Files.newInputStream(resolvePath(inputFile).toPath());
+                opened.add(in);
+                isInputRedirected = true;
+            }
+            if (outputFile != null) {
+                failed = outputFile;
+                out = openOutput(outputFile, redirects.get(RedirectType.OUTPUT_APPEND) != null);
+                opened.add(out);
+            }
+            if (errorFile != null) {
+                failed = errorFile;
+                err = resolvePath(errorFile).equals(outputFile != null ? resolvePath(outputFile) : null)
+                        ? out
+                        : openOutput(errorFile, redirects.get(RedirectType.ERROR_APPEND) != null);
+                opened.add(err);
+            }
+        } catch (IOException e) {
+            return new ExecutionError(String.format("%s: %s", failed, Program.describeFailure(e)));
+        }
+        return null;
+    }
+
+    private PrintStream openOutput(File file, Boolean isAppend) throws IOException {
+        Path target = resolvePath(file).toPath();
+        OutputStream stream = isAppend
+                ? Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newOutputStream(target);
+        return new PrintStream(new BufferedOutputStream(stream), false, StandardCharsets.UTF_8);
+    }
+
+    // Puts `name` back the way it was in `previous`.
+    private void restoreVariable(String name, Environment previous) {
+        String value = previous.get(name);
+        environment = environment.without(name);
+        if (value != null || previous.exported.contains(name)) {
+            environment = environment.with(name, value, previous.exported.contains(name));
+        }
+        variableChanged(name);
+    }
+
+    void processPipeline(List<Input> stages, Boolean isBackground, String source, CommandMetrics metrics) {
+        List<Program> programs = new ArrayList<>();
+        List<List<String>> args = new ArrayList<>();
+        long resolveStart = System.nanoTime();
+        for (Input stage : stages) {
+            if (stage.command == null) {
+                // assignments alone in a pipeline stage don't outlive it
+                continue;
+            }
+            Program program = createProgram(stage);
+            if (program == null) {
+                lastExitCode = 127;
+                return;
+            }
+            programs.add(program);
+            args.add(stage.args);
+        }
+        metrics.resolveNanos += System.nanoTime() - resolveStart;
+        if (programs.isEmpty()) {
+            lastExitCode = 0;
+            return;
+        }
+
+        Pipeline pipeline = new Pipeline(programs, args);
+        if (isBackground) {
+            pipeline.isBackground = true;
+            JobTable.Job job = jobs.add(source, pipeline, pipeline.start(this));
+            metrics.spawnNanos += pipeline.spawnNanos;
+            Printer.print(err, job.processes().isEmpty()
+                    ? String.format("[%d]", job.id())
+                    : String.format("[%d] %d", job.id(), job.processes().getLast().pid()));
+            lastExitCode = 0;
+            return;
+        }
+
+        ExecutionResult result = pipeline.execute(this);
+        metrics.spawnNanos += pipeline.spawnNanos;
         if (result instanceof ExecutionError executionError) {
-            program.print(program.getErrorRedirect(), executionError.message);
+            Printer.print(err, executionError.message);
+        }
+        lastExitCode = result.exitCode;
+    }
+
+    private void assignVariables(List<String> assignments) {
+        for (String assignment : assignments) {
+            int separator = assignment.indexOf('=');
+            setVariable(assignment.substring(0, separator), assignment.substring(separator + 1), false);
+        }
+    }
+
+    // `$?` is the status of the last command; unset variables are empty.
+    String getVariable(String name) {
+        if (name.equals("?")) {
+            return Integer.toString(lastExitCode);
+        }
+        if (name.equals("#")) {
+            return Integer.toString(positionalArgs.size());
+        }
+        if (name.equals("@") || name.equals("*")) {
+            return String.join(" ", positionalArgs);
+        }
+        if (Character.isDigit(name.charAt(0))) {
+            int index = Integer.parseInt(name);
+            return index > 0 && index <= positionalArgs.size() ? positionalArgs.get(index - 1) : "";
+        }
+        String value = environment.get(name);
+        return value != null ? value : "";
+    }
+
+    // A null value leaves the variable as it is, for exporting one already set.
+    void setVariable(String name, String value, Boolean isExported) {
+        environment = environment.with(name, value, isExported);
+        variableChanged(name);
+    }
+
+    void unsetVariable(String name) {
+        environment = environment.without(name);
+        variableChanged(name);
+    }
+
+    private void variableChanged(String name) {
+        if (name.equals("HOME")) {
+            homeDir = environment.get("HOME");
+        } else if (name.equals("PATH")) {
+            // commands are looked up through the hash for the new PATH from now on
+            commandHash = CommandHash.forPath(environment.get("PATH"));
+            if (isInteractive) {
+                Input.commandIndex.close();
+                Input.commandIndex = new CompletionIndex(commandHash, BuiltinCommand.COMMANDS);
+                Input.commandIndex.buildInBackground();
+            }
+        }
+    }
+
+    // The output of `commandLine`, trimmed for substitution into a word.
+    String captureOutput(String commandLine) {
+        CommandSubstitution.Capture capture = new CommandSubstitution.Capture(captureLimit);
+        PrintStream captureStream = new PrintStream(capture, false, StandardCharsets.UTF_8);
+        Shell subshell = new Shell(this, captureStream);
+        try {
+            subshell.processInput(commandLine);
+        } catch (UserInitiatedException e) {
+            // exit ends the substitution, not the shell
+        }
+        captureStream.flush();
+        if (capture.dropped > 0) {
+            Printer.print(err, String.format("command substitution: output cut off after %d bytes", captureLimit));
+        }
+        return capture.toTrimmedString();
+    }
+
+    // Every command line is reported to Flight Recorder, and to the metrics log
+    // when SHELL_METRICS_LOG names one.
+    private void recordMetrics(CommandMetrics metrics) {
+        metrics.emitEvent();
+        if (metricsLog == null) {
+            return;
+        }
+        try {
+            metrics.appendTo(resolvePath(metricsLog));
+        } catch (IOException e) {
+            Printer.print(err, String.format("Error writing to metrics log %s: %s", metricsLog, e.getMessage()));
+        }
+    }
+
+    Program createProgram(Input input) {
+        return createProgram(input, err);
+    }
+
+    Program createProgram(Input input, PrintStream notFoundDestination) {
+        Program program;
+        try {
+            program = BuiltinCommand.isBuiltin(input.command)
+                    ? BuiltinCommand.fromName(input.command, input.redirects)
+                    : BuiltinCommand.hasFastPath(input.command)
+                            ? BuiltinCommand.fastPathFromName(input.command, input.redirects, commandHash)
+                            : new Executable(input.command, input.redirects, commandHash);
+        } catch (IllegalArgumentException e) {
+            Printer.print(notFoundDestination, String.format("%s: command not found", input.command));
+            return null;
+        }
+        program.cwd = cwd;
+        if (input.assignments != null) {
+            // assignments ahead of a command only go to that command
+            Environment commandEnvironment = environment;
+            for (String assignment : input.assignments) {
+                int separator = assignment.indexOf('=');
+                commandEnvironment = commandEnvironment.with(assignment.substring(0, separator),
+                        assignment.substring(separator + 1), true);
+            }
+            program.environment = commandEnvironment;
         }
+        program.out = out;
+        program.err = err;
+        program.heredoc = input.heredoc;
+        return program;
+    }
+
+    // Reads the body of every heredoc started on `line`, in order, whether or not
+    // its command ends up running. As in the parser, a stage only keeps its last
+    // heredoc.
+    private void readHeredocBodies(String line, List<String> bodies) throws UserInitiatedException {
+        List<Lexer.Token> tokens = Lexer.tokenize(line);
+        String delimiter = null;
+        for (int i = 0; i < tokens.size(); i++) {
+            Lexer.Token token = tokens.get(i);
+            if (token.type() == Lexer.TokenType.REDIRECT) {
+                if (RedirectType.fromString(token.text()) == RedirectType.INPUT_APPEND && i + 1 < tokens.size()
+                        && tokens.get(i + 1).type() == Lexer.TokenType.WORD) {
+                    delimiter = tokens.get(i + 1).text();
+                }
+            } else if (token.type() != Lexer.TokenType.WORD) {
+                if (delimiter != null) {
+                    bodies.add(readHeredoc(delimiter));
+                }
+                delimiter = null;
+            }
+        }
+        if (delimiter != null) {
+            bodies.add(readHeredoc(delimiter));
+        }
+    }
+
+    // Hands the bodies read to the commands of `script`, which has them in the same
+    // order.
+    private static Map<Node.Command, String[]> assignHeredocs(Node script, List<String> bodies) {
+        List<Node.Command> commands = new ArrayList<>();
+        script.addHeredocCommands(commands);
+        Map<Node.Command, String[]> assigned = new IdentityHashMap<>();
+        int next = 0;
+        for (Node.Command command : commands) {
+            List<Input> stages = command.commandLine.stages;
+            String[] stageBodies = new String[stages.size()];
+            for (int i = 0; i < stages.size(); i++) {
+                if (stages.get(i).heredocDelimiter != null) {
+                    stageBodies[i] = next < bodies.size() ? bodies.get(next++) : "";
+                }
+            }
+            assigned.put(command, stageBodies);
+        }
+        return assigned;
+    }
+
+    // Collects the lines following the command up to the delimiter line.
+    String readHeredoc(String delimiter) throws UserInitiatedException {
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = readNextLine()) != null && !line.equals(delimiter)) {
+            body.append(line).append('\n');
+        }
+        return body.toString();
+    }
+
+    // The next line of the script being run or, interactively, from a further
+    // prompt; null once there are no more.
+    String readNextLine() throws UserInitiatedException {
+        try {
+            if (scriptReader != null) {
+                return scriptReader.readLine();
+            }
+            System.out.print("> ");
+            String line = Input.readInput();
+            System.out.println();
+            return line;
+        } catch (IOException e) {
+            Printer.print(err, e.getMessage());
+            return null;
+        }
+    }
+
+    private static File fileOrNull(String path) {
+        return path != null && !path.isEmpty() ? new File(path) : null;
+    }
+
+    File resolvePath(File file) {
+        return file.isAbsolute() ? file : new File(cwd, file.getPath());
     }
 
     void changeDirectory(String path) {
@@ -0,0 +1,70 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Forwards one invocation to a running ShellServer: the arguments, working
+// directory, environment and stdin go out, stdout, stderr and the exit status come back.
+class ShellClient {
+    static final int BUFFER_SIZE = 8192;
+
+    static int run(Path socketPath, List<String> args) throws IOException {
+        try (FramedChannel channel = new FramedChannel(
+                SocketChannel.open(StandardProtocolFamily.UNIX))) {
+            channel.channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+            List<String> cwdAndArgs = new ArrayList<>();
+            cwdAndArgs.add(System.getProperty("user.dir"));
+            cwdAndArgs.addAll(args);
+            channel.write(FramedChannel.ARGUMENTS, ShellServer.joinNullSeparated(cwdAndArgs));
+
+            List<String> environment = new ArrayList<>();
+            for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+                environment.add(entry.getKey() + "=" + entry.getValue());
+            }
+            channel.write(FramedChannel.ENVIRONMENT, ShellServer.joinNullSeparated(environment));
+
+            Thread.ofVirtual().start(() -> sendInput(channel, System.in));
+
+            FramedChannel.Frame frame;
+            while ((frame = channel.read()) != null) {
+                switch (frame.type()) {
+                    case FramedChannel.STDOUT -> {
+                        System.out.write(frame.payload());
+                        System.out.flush();
+                    }
+                    case FramedChannel.STDERR -> {
+                        System.err.write(frame.payload());
+                        System.err.flush();
+                    }
+                    case FramedChannel.EXIT -> {
+                        return ByteBuffer.wrap(frame.payload()).getInt();
+                    }
+                    default -> throw new IOException("Unexpected frame type: " + (char) frame.type());
+                }
+            }
+            throw new IOException("The shell server closed the session without an exit status");
+        }
+    }
+
+    private static void sendInput(FramedChannel channel, InputStream source) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int bytesRead;
+            while ((bytesRead = source.read(buffer)) != -1) {
+                if (bytesRead > 0) {
+                    channel.write(FramedChannel.STDIN, buffer, 0, bytesRead);
+                }
+            }
+            channel.write(FramedChannel.STDIN, new byte[0]);
+        } catch (IOException e) {
+            // the session is over
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Long-running host for non-interactive sessions. Every client connection gets
+// its own Shell, with the client's working directory and environment, on its own
+// virtual thread, so only the first session pays for JVM startup.
+class ShellServer {
+    final Path socketPath;
+    // held so the daemon's own PATH stays listed between sessions
+    CommandHash commandHash;
+
+    ShellServer(Path socketPath) {
+        this.socketPath = socketPath;
+    }
+
+    void serve() throws IOException {
+        Files.deleteIfExists(socketPath);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            socketPath.toFile().deleteOnExit();
+            commandHash = CommandHash.forPath(System.getenv("PATH"));
+            commandHash.validate();
+
+            while (true) {
+                SocketChannel client = server.accept();
+                Thread.ofVirtual().start(() -> serveSession(client));
+            }
+        }
+    }
+
+    static void serveSession(SocketChannel client) {
+        try (FramedChannel channel = new FramedChannel(client)) {
+            FramedChannel.Frame arguments = channel.read();
+            FramedChannel.Frame environment = channel.read();
+            if (arguments == null || arguments.type() != FramedChannel.ARGUMENTS
+                    || environment == null || environment.type() != FramedChannel.ENVIRONMENT) {
+                return;
+            }
+            List<String> cwdAndArgs = splitNullSeparated(arguments.payload());
+
+            SessionInput input = new SessionInput();
+            Thread.ofVirtual().start(() -> receiveInput(channel, input));
+
+            PrintStream out = new PrintStream(new BufferedOutputStream(channel.outputStream(FramedChannel.STDOUT)),
+                    false);
+            PrintStream err = new PrintStream(new ErrorOutputStream(out, channel.outputStream(FramedChannel.STDERR)),
+                    true);
+            Shell shell = new Shell(new File(cwdAndArgs.getFirst()), input, out, err,
+                    parseEnvironment(environment.payload()));
+            shell.isSharedProcess = true;
+            int exitCode;
+            try {
+                exitCode = shell.runNonInteractive(cwdAndArgs.subList(1, cwdAndArgs.size()));
+            } finally {
+                input.end();
+            }
+            out.flush();
+            err.flush();
+            channel.writeExitCode(exitCode);
+        } catch (IOException e) {
+            // the client disconnected, there is nobody left to report to
+        }
+    }
+
+    private static void receiveInput(FramedChannel channel, SessionInput input) {
+        try {
+            FramedChannel.Frame frame;
+            while ((frame = channel.read()) != null) {
+                if (frame.type() == FramedChannel.STDIN) {
+                    input.offer(frame.payload());
+                    if (frame.payload().length == 0) {
+                        return;
+                    }
+                }
+            }
+            input.offer(SessionInput.END);
+        } catch (IOException | InterruptedException e) {
+            try {
+                input.offer(SessionInput.END);
+            } catch (InterruptedException ignored) {
+                // nobody is going to read the rest anyway
+            }
+        }
+    }
+
+    static List<String> splitNullSeparated(byte[] payload) {
+        String joined = new String(payload, StandardCharsets.UTF_8);
+        return joined.isEmpty() ? List.of() : Arrays.asList(joined.split("\0", -1));
+    }
+
+    static byte[] joinNullSeparated(List<String> values) {
+        return String.join("\0", values).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> parseEnvironment(byte[] payload) {
+        Map<String, String> environment = new HashMap<>();
+        for (String entry : splitNullSeparated(payload)) {
+            int separator = entry.indexOf('=');
+            if (separator > 0) {
+                environment.put(entry.substring(0, separator), entry.substring(separator + 1));
+            }
+        }
+        return environment;
+    }
+}
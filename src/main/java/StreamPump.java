@@ -0,0 +1,47 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+class StreamPump implements Runnable {
+    static final int BUFFER_SIZE = 8192;
+    final InputStream source;
+    final OutputStream destination;
+    final Boolean shouldCloseDestination;
+
+    StreamPump(InputStream source, OutputStream destination, Boolean shouldCloseDestination) {
+        this.source = source;
+        this.destination = destination;
+        this.shouldCloseDestination = shouldCloseDestination;
+    }
+
+    static Thread start(InputStream source, OutputStream destination) {
+        return Thread.ofVirtual().start(new StreamPump(source, destination, false));
+    }
+
+    // Like start, but closes the destination afterwards so a child reading it sees the end of input.
+    static Thread feed(InputStream source, OutputStream destination) {
+        return Thread.ofVirtual().start(new StreamPump(source, destination, true));
+    }
+
+    @Override
+    public void run() {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (source) {
+            int bytesRead;
+            while ((bytesRead = source.read(buffer)) != -1) {
+                destination.write(buffer, 0, bytesRead);
+                destination.flush();
+            }
+        } catch (IOException e) {
+            // the other side went away, nothing left to forward
+        } finally {
+            if (shouldCloseDestination) {
+                try {
+                    destination.close();
+                } catch (IOException e) {
+                    // the reader is already gone
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+// In raw mode the terminal no longer turns "\n" into "\r\n" by itself,
+// so every line feed that isn't already preceded by a carriage return gets one.
+class TerminalOutputStream extends OutputStream {
+    static final int BUFFER_SIZE = 8192;
+    final OutputStream destination;
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    int count = 0;
+    boolean isAfterCarriageReturn = false;
+
+    TerminalOutputStream(OutputStream destination) {
+        this.destination = destination;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        if (count + 2 > buffer.length) {
+            drain();
+        }
+        append((byte) b);
+    }
+
+    @Override
+    public synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            if (count + 2 > buffer.length) {
+                drain();
+            }
+            append(bytes[i]);
+        }
+    }
+
+    private void append(byte b) {
+        if (b == '\n' && !isAfterCarriageReturn) {
+            buffer[count++] = '\r';
+        }
+        buffer[count++] = b;
+        isAfterCarriageReturn = b == '\r';
+    }
+
+    private void drain() throws IOException {
+        if (count > 0) {
+            destination.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        drain();
+        destination.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        destination.close();
+    }
+}
@@ -0,0 +1,62 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandHashTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void eachShellLooksCommandsUpThroughItsOwnPath() throws Exception {
+        Path tools = Files.createDirectories(dir.resolve("tools"));
+        Path tool = Files.writeString(tools.resolve("only-here"), "#!/bin/sh\necho ran\n");
+        Files.setPosixFilePermissions(tool, PosixFilePermissions.fromString("rwxr-xr-x"));
+
+        ShellRun withTools = ShellRun.run(dir.toFile(), "only-here\n", "", Map.of("PATH", tools.toString()));
+        ShellRun without = ShellRun.run(dir.toFile(), "only-here\n", "", Map.of("PATH", dir.toString()));
+
+        assertEquals("ran\n", withTools.out());
+        assertEquals("only-here: command not found\n", without.err());
+    }
+
+    @Test
+    void shellsWithTheSamePathShareAHash() {
+        CommandHash first = CommandHash.forPath("/shared-test-path");
+
+        assertSame(first, CommandHash.forPath("/shared-test-path"));
+    }
+
+    @Test
+    void unusedPathIsDropped() throws Exception {
+        CommandHash.forPath("/unused-test-path");
+        // entries of collected hashes go when the next one is looked up
+        for (int i = 0; i < 100 && CommandHash.BY_PATH.containsKey("/unused-test-path"); i++) {
+            System.gc();
+            Thread.sleep(10);
+            CommandHash.forPath("/another-test-path");
+        }
+
+        assertFalse(CommandHash.BY_PATH.containsKey("/unused-test-path"));
+    }
+
+    @Test
+    void closedIndexNoLongerListens() {
+        CommandHash commandHash = CommandHash.forPath("/listener-test-path");
+        CompletionIndex index = new CompletionIndex(commandHash, List.of("echo"));
+        index.buildInBackground().join();
+        assertTrue(commandHash.listeners.contains(index));
+
+        index.close();
+
+        assertFalse(commandHash.listeners.contains(index));
+    }
+}
@@ -0,0 +1,35 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import org.junit.jupiter.api.Test;
+
+class CommandMetricsTest {
+    @Test
+    void clockTicksMatchTheSystem() throws Exception {
+        Process getconf = new ProcessBuilder("getconf", "CLK_TCK").start();
+        String expected = new BufferedReader(new InputStreamReader(getconf.getInputStream())).readLine();
+
+        assertEquals(Long.parseLong(expected.trim()), CommandMetrics.readClockTicks());
+    }
+
+    @Test
+    void cpuTimesAreOnlyMeasuredWhenReported() {
+        assertFalse(new CommandMetrics("true", false, false).isCpuMeasured);
+        assertTrue(new CommandMetrics("true", true, false).isCpuMeasured);
+        assertFalse(new CommandMetrics("true", true, true).isCpuMeasured);
+    }
+
+    @Test
+    void unmeasuredCpuTimesAreLeftOutOfReports() {
+        CommandMetrics metrics = new CommandMetrics("true", true, true);
+        metrics.start();
+        metrics.stop(0);
+
+        assertFalse(metrics.formatLogLine().contains("user_us"));
+        assertEquals(2, metrics.formatReport().lines().count());
+        assertTrue(new CommandMetrics("true", true, false).formatLogLine().contains(" user_us=0 sys_us=0 "));
+    }
+}
@@ -0,0 +1,34 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CommandSubstitutionTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void redirectTargetKeepsItsTextForSubstitution() throws Exception {
+        ShellRun run = ShellRun.run(dir.toFile(), "name=out.txt; echo hi > ./$name\ncat < ./$name\n");
+
+        assertEquals("", run.err());
+        assertEquals("hi\n", run.out());
+        assertEquals("hi\n", Files.readString(dir.resolve("out.txt")));
+    }
+
+    @Test
+    void expandLeavesOutSubstitutionsOutsideTheText() {
+        Shell shell = new Shell(new File("."), System.in, System.out, System.err, Map.of("X", "x"));
+        List<Lexer.Substitution> substitutions = List.of(
+                new Lexer.Substitution(1, null, "X", false),
+                new Lexer.Substitution(9, null, "X", false));
+
+        assertEquals("axb", CommandSubstitution.expand(shell, "ab", substitutions));
+        assertEquals(List.of("axb"), CommandSubstitution.expandFields(shell, "ab", substitutions));
+    }
+}
@@ -0,0 +1,59 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class EnvironmentTest {
+    @Test
+    void settingAVariableLeavesTheOriginalAlone() {
+        Environment original = Environment.of(Map.of("A", "1"));
+
+        Environment changed = original.with("B", "2", false);
+
+        assertNull(original.get("B"));
+        assertEquals("2", changed.get("B"));
+        assertFalse(changed.exported.contains("B"));
+    }
+
+    @Test
+    void unchangedValueGivesTheSameEnvironment() {
+        Environment original = Environment.of(Map.of("A", "1"));
+
+        assertSame(original, original.with("A", "1", true));
+        assertSame(original, original.without("B"));
+    }
+
+    @Test
+    void exportingWithoutAValueKeepsTheValue() {
+        Environment environment = Environment.of(Map.of()).with("A", "1", false).with("A", null, true);
+
+        assertEquals("1", environment.get("A"));
+        assertEquals(Map.of("A", "1"), environment.exportedVariables());
+    }
+
+    @Test
+    void processChangesAreTheDifferenceFromTheJvmEnvironment() {
+        Environment inherited = Environment.fromSystem();
+        assertTrue(inherited.processChanges().isEmpty());
+
+        String someInherited = System.getenv().keySet().iterator().next();
+        Environment.ProcessChanges changes = inherited.with("SHELL_TEST_VARIABLE", "x", true)
+                .without(someInherited)
+                .processChanges();
+
+        assertEquals(Map.of("SHELL_TEST_VARIABLE", "x"), changes.set());
+        assertEquals(Set.of(someInherited), changes.removed());
+    }
+
+    @Test
+    void unexportedVariablesStayOutOfChildren() {
+        Environment environment = Environment.of(Map.of()).with("LOCAL", "1", false);
+
+        assertEquals(Map.of(), environment.exportedVariables());
+    }
+}
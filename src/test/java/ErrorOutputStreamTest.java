@@ -0,0 +1,23 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class ErrorOutputStreamTest {
+    @Test
+    void bufferedOutputComesOutAheadOfLaterErrors() {
+        ByteArrayOutputStream terminal = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(new BufferedOutputStream(terminal), false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new ErrorOutputStream(out, terminal), true, StandardCharsets.UTF_8);
+
+        out.println("first");
+        err.println("second");
+        out.println("third");
+        out.flush();
+
+        assertEquals("first\nsecond\nthird\n", terminal.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FramedChannelTest {
+    @TempDir
+    Path dir;
+    SocketChannel client;
+    FramedChannel server;
+
+    @BeforeEach
+    void connect() throws IOException {
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(dir.resolve("socket"));
+        try (ServerSocketChannel listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            listener.bind(address);
+            client = SocketChannel.open(address);
+            server = new FramedChannel(listener.accept());
+        }
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    private void sendHeader(byte type, int length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FramedChannel.HEADER_SIZE).put(type).putInt(length).flip();
+        while (header.hasRemaining()) {
+            client.write(header);
+        }
+    }
+
+    @Test
+    void frameComesThroughWhole() throws IOException {
+        new FramedChannel(client).write(FramedChannel.STDIN, new byte[] { 1, 2, 3 });
+
+        FramedChannel.Frame frame = server.read();
+
+        assertEquals(FramedChannel.STDIN, frame.type());
+        assertArrayEquals(new byte[] { 1, 2, 3 }, frame.payload());
+    }
+
+    @Test
+    void negativeLengthIsRejected() throws IOException {
+        sendHeader(FramedChannel.STDIN, -1);
+
+        assertThrows(IOException.class, server::read);
+    }
+
+    @Test
+    void lengthPastTheLimitIsRejected() throws IOException {
+        sendHeader(FramedChannel.STDIN, FramedChannel.MAX_PAYLOAD_SIZE + 1);
+
+        assertThrows(IOException.class, server::read);
+    }
+
+    @Test
+    void closedConnectionReadsAsNull() throws IOException {
+        client.close();
+
+        assertNull(server.read());
+    }
+}
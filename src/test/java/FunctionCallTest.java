@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FunctionCallTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void outputRedirectAppliesToTheWholeBody() throws Exception {
+        ShellRun run = ShellRun.run(dir.toFile(), "f() { echo inside; ls " + dir.resolve("nope") + "; }\n"
+                + "f > out.txt 2>> err.txt\n");
+
+        assertEquals("", run.out());
+        assertEquals("", run.err());
+        assertEquals("inside\n", Files.readString(dir.resolve("out.txt")));
+        assertEquals(1, Files.readAllLines(dir.resolve("err.txt")).size());
+    }
+
+    @Test
+    void inputRedirectAndHeredocFeedTheBody() throws Exception {
+        Files.writeString(dir.resolve("in.txt"), "from file\n");
+        ShellRun run = ShellRun.run(dir.toFile(), "f() { cat; }\nf < in.txt\nf <<END\nfrom heredoc\nEND\n",
+                "from stdin\n", Map.of());
+
+        assertEquals("from file\nfrom heredoc\n", run.out());
+    }
+
+    @Test
+    void assignmentsLastForTheCallOnly() {
+        ShellRun run = ShellRun.run(dir.toFile(), "f() { echo \"in $X\"; }\nX=1 f\necho \"after $X\"\n");
+
+        assertEquals("in 1\nafter \n", run.out());
+    }
+
+    @Test
+    void unopenableRedirectSkipsTheBody() {
+        ShellRun run = ShellRun.run(dir.toFile(), "f() { echo inside; }\nf > missing/out.txt\necho $?\n");
+
+        assertEquals("1\n", run.out());
+        assertEquals("missing/out.txt: No such file or directory\n", run.err());
+    }
+}
@@ -0,0 +1,39 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GlobTest {
+    @TempDir
+    Path dir;
+
+    @BeforeEach
+    void createTree() throws Exception {
+        Files.createDirectories(dir.resolve("src/main/deep"));
+        Files.createDirectories(dir.resolve("src/.hidden"));
+        Files.writeString(dir.resolve("src/a.txt"), "");
+        Files.writeString(dir.resolve("src/main/b.txt"), "");
+        Files.writeString(dir.resolve("src/main/c.java"), "");
+    }
+
+    @Test
+    void trailingRecursiveSlashKeepsOnlyDirectories() {
+        assertEquals(List.of("src/main/", "src/main/deep/"), new Glob("src/**/").expand(dir.toFile()));
+    }
+
+    @Test
+    void recursiveSegmentMatchesAnyDepth() {
+        assertEquals(List.of("src/a.txt", "src/main/b.txt"), new Glob("src/**/*.txt").expand(dir.toFile()));
+        assertEquals(List.of("src/a.txt", "src/main", "src/main/b.txt", "src/main/c.java", "src/main/deep"),
+                new Glob("src/**").expand(dir.toFile()));
+    }
+
+    @Test
+    void unmatchedPatternExpandsToNothing() {
+        assertEquals(List.of(), new Glob("src/*.md").expand(dir.toFile()));
+    }
+}
@@ -0,0 +1,26 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HeredocTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void bodyInsideMultiLineCompoundIsReadWithItsLine() {
+        ShellRun run = ShellRun.run(dir.toFile(), "for i in 1 2\ndo\ncat <<END\nbody\nEND\ndone\necho after\n");
+
+        assertEquals("", run.err());
+        assertEquals("body\nbody\nafter\n", run.out());
+    }
+
+    @Test
+    void bodiesFollowTheirLineInOrder() {
+        ShellRun run = ShellRun.run(dir.toFile(),
+                "cat <<A | cat; cat <<B\na\nA\nb\nB\nif true; then cat <<X\nin if\nX\nfi\n");
+
+        assertEquals("a\nb\nin if\n", run.out());
+    }
+}
@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.junit.jupiter.api.Test;
+
+class KeyReaderTest {
+    // Hands out one chunk per read, the way a terminal delivers what has arrived.
+    static class ChunkedInput extends InputStream {
+        final Deque<byte[]> chunks = new ArrayDeque<>();
+
+        ChunkedInput(byte[]... chunks) {
+            this.chunks.addAll(Arrays.asList(chunks));
+        }
+
+        ChunkedInput(String... chunks) {
+            for (String chunk : chunks) {
+                this.chunks.add(chunk.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            byte[] chunk = chunks.poll();
+            if (chunk == null) {
+                return -1;
+            }
+            int count = Math.min(length, chunk.length);
+            System.arraycopy(chunk, 0, bytes, offset, count);
+            if (count < chunk.length) {
+                chunks.addFirst(Arrays.copyOfRange(chunk, count, chunk.length));
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunks.isEmpty() ? 0 : chunks.peek().length;
+        }
+    }
+
+    @Test
+    void pasteEndMarkerSplitAcrossReadsEndsThePaste() throws Exception {
+        KeyReader keys = new KeyReader(new ChunkedInput("\u001b[200~hello", "\u001b[20", "1~x"));
+        StringBuilder pasted = new StringBuilder();
+
+        assertEquals(KeyReader.PASTE_START, keys.next());
+        assertEquals(KeyReader.PASTE_END, keys.readPaste(pasted));
+        assertEquals("hello", pasted.toString());
+        assertEquals('x', keys.next());
+    }
+
+    @Test
+    void otherEscapeSequencesInAPasteAreKept() throws Exception {
+        KeyReader keys = new KeyReader(new ChunkedInput("a\u001b[1;5Ab\u001b[201~"));
+        StringBuilder pasted = new StringBuilder();
+
+        assertEquals(KeyReader.PASTE_END, keys.readPaste(pasted));
+        assertEquals("a\u001b[1;5Ab", pasted.toString());
+    }
+
+    @Test
+    void characterSplitAcrossReadsIsDecodedWhole() throws Exception {
+        byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        KeyReader keys = new KeyReader(new ChunkedInput(Arrays.copyOfRange(euro, 0, 1),
+                Arrays.copyOfRange(euro, 1, euro.length)));
+
+        assertEquals('€', keys.next());
+        assertEquals(KeyReader.END_OF_INPUT, keys.next());
+    }
+
+    @Test
+    void arrowKeysAreDecoded() throws Exception {
+        KeyReader keys = new KeyReader(new ChunkedInput("\u001b[A\u001bOD\u001b[3~"));
+
+        assertEquals(KeyReader.ARROW_UP, keys.next());
+        assertEquals(KeyReader.ARROW_LEFT, keys.next());
+        assertEquals(KeyReader.DELETE, keys.next());
+    }
+}
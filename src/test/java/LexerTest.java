@@ -0,0 +1,32 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LexerTest {
+    private static List<String> describe(String line) {
+        return Lexer.tokenize(line).stream().map(token -> token.type() + ":" + token.text()).toList();
+    }
+
+    @Test
+    void descriptorDuplicationIsOneRedirectOperator() {
+        assertEquals(List.of("WORD:echo", "REDIRECT:2>&", "WORD:1"), describe("echo 2>&1"));
+        assertEquals(List.of("WORD:echo", "REDIRECT:>&", "WORD:2"), describe("echo >&2"));
+        assertEquals(List.of("WORD:echo", "REDIRECT:&>", "WORD:out"), describe("echo &>out"));
+    }
+
+    @Test
+    void ampersandOnItsOwnStillRunsInTheBackground() {
+        assertEquals(List.of("WORD:a", "BACKGROUND:&", "WORD:b"), describe("a & b"));
+        assertEquals(List.of("WORD:a", "REDIRECT:>", "WORD:f", "BACKGROUND:&"), describe("a >f&"));
+        assertEquals(List.of("WORD:a", "AND:&&", "WORD:b"), describe("a&&b"));
+    }
+
+    @Test
+    void parserTurnsDownDescriptorDuplication() {
+        Node script = Parser.parse("ls missing 2>&1 | cat");
+
+        assertEquals("syntax error: `2>&1': duplicating a file descriptor isn't supported",
+                ((Node.Invalid) script).message);
+    }
+}
@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class ParserTest {
+    @Test
+    void unfinishedCompoundIsIncomplete() {
+        for (String line : List.of("for i in 1 2", "if true; then", "while true\ndo", "f() {", "a &&")) {
+            Node.Invalid invalid = assertInstanceOf(Node.Invalid.class, Parser.parse(line), line);
+            assertTrue(invalid.isIncomplete, line);
+        }
+    }
+
+    @Test
+    void misplacedTokenIsASyntaxError() {
+        Node.Invalid invalid = assertInstanceOf(Node.Invalid.class, Parser.parse("echo a | | cat"));
+
+        assertFalse(invalid.isIncomplete);
+        assertEquals("syntax error near unexpected token `|'", invalid.message);
+    }
+
+    @Test
+    void redirectWithoutTargetIsASyntaxError() {
+        Node.Invalid invalid = assertInstanceOf(Node.Invalid.class, Parser.parse("echo a >"));
+
+        assertEquals("syntax error near unexpected token `newline'", invalid.message);
+    }
+
+    @Test
+    void pipelineStagesKeepTheirOwnRedirects() {
+        Node.Command command = assertInstanceOf(Node.Command.class, Parser.parse("cat < in | sort > out"));
+        List<Input> stages = command.commandLine.stages;
+
+        assertEquals(2, stages.size());
+        assertEquals("in", stages.get(0).redirects.get(RedirectType.INPUT).getPath());
+        assertEquals("out", stages.get(1).redirects.get(RedirectType.OUTPUT).getPath());
+    }
+
+    @Test
+    void heredocDelimiterIsKeptOnItsStage() {
+        Node.Command command = assertInstanceOf(Node.Command.class, Parser.parse("cat <<END | wc -l"));
+
+        assertEquals("END", command.commandLine.stages.get(0).heredocDelimiter);
+        assertNull(command.commandLine.stages.get(1).heredocDelimiter);
+    }
+}
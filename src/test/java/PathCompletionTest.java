@@ -0,0 +1,45 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PathCompletionTest {
+    @TempDir
+    Path home;
+    PathCompletion paths;
+
+    @BeforeEach
+    void createHome() throws Exception {
+        Files.createDirectories(home.resolve("projects"));
+        Files.writeString(home.resolve("profile"), "");
+        Files.writeString(home.resolve(".hidden"), "");
+        PrintStream discard = new PrintStream(new ByteArrayOutputStream());
+        Shell shell = new Shell(home.toFile(), new ByteArrayInputStream(new byte[0]), discard, discard,
+                Map.of("HOME", home.toString(), "PATH", ""));
+        paths = new PathCompletion(shell);
+    }
+
+    @Test
+    void bareTildeCompletesToTheHomeDirectory() {
+        assertEquals(new CompletionIndex.Completion(List.of("~/"), "~/"), paths.complete("~"));
+    }
+
+    @Test
+    void segmentAfterTildeCompletesInTheHomeDirectory() {
+        assertEquals(new CompletionIndex.Completion(List.of("profile", "projects/"), "pro"), paths.complete("~/pro"));
+    }
+
+    @Test
+    void hiddenNamesOnlyMatchADot() {
+        assertEquals(List.of("profile", "projects/"), paths.complete("").matches());
+        assertEquals(List.of(".hidden"), paths.complete(".").matches());
+    }
+}
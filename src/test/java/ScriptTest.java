@@ -0,0 +1,40 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScriptTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void sequenceKeepsTheStatusOfTheCommandBefore() {
+        ShellRun run = ShellRun.run(dir.toFile(), "false\necho \"$?\"; echo x\n");
+
+        assertEquals("1\nx\n", run.out());
+    }
+
+    @Test
+    void sameLineTwiceReadsEachHeredocBody() {
+        ShellRun run = ShellRun.run(dir.toFile(), "cat <<END\nfirst\nEND\ncat <<END\nsecond\nEND\n");
+
+        assertEquals("", run.err());
+        assertEquals("first\nsecond\n", run.out());
+    }
+
+    @Test
+    void loopsAndConditionsRunTheirBodies() {
+        ShellRun run = ShellRun.run(dir.toFile(),
+                "for i in a b; do if test $i = b; then echo \"b!\"; else echo $i; fi; done\n");
+
+        assertEquals("a\nb!\n", run.out());
+    }
+
+    @Test
+    void returnEndsTheFunctionWithItsStatus() {
+        ShellRun run = ShellRun.run(dir.toFile(), "f() { return 3; echo unreachable; }\nf\necho $?\n");
+
+        assertEquals("3\n", run.out());
+    }
+}
@@ -0,0 +1,58 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+class SessionInputTest {
+    @Test
+    void forwarderStopsWhenTheChildExitsAndLeavesLaterInput() throws Exception {
+        SessionInput input = new SessionInput();
+        Process child = new ProcessBuilder("true").start();
+        Thread forwarder = input.forwardTo(child);
+
+        child.waitFor();
+        forwarder.join(Duration.ofSeconds(5));
+
+        assertFalse(forwarder.isAlive());
+        input.offer("later".getBytes(StandardCharsets.UTF_8));
+        byte[] read = new byte[16];
+        assertEquals("later", new String(read, 0, input.read(read, 0, read.length), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void forwarderHandsInputToTheChild() throws Exception {
+        SessionInput input = new SessionInput();
+        Process child = new ProcessBuilder("cat").start();
+        Thread forwarder = input.forwardTo(child);
+
+        input.offer("hello\n".getBytes(StandardCharsets.UTF_8));
+        // the client's end of input
+        input.offer(new byte[0]);
+        forwarder.join(Duration.ofSeconds(5));
+
+        assertEquals("hello\n", new String(child.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        assertEquals(0, child.waitFor());
+    }
+
+    @Test
+    void offerToAnEndedSessionGivesUp() throws Exception {
+        SessionInput input = new SessionInput();
+        input.end();
+        Thread client = Thread.ofVirtual().start(() -> {
+            try {
+                for (int i = 0; i < SessionInput.QUEUE_CAPACITY * 2; i++) {
+                    input.offer(new byte[] { 'x' });
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        client.join(Duration.ofSeconds(5));
+
+        assertFalse(client.isAlive());
+        assertEquals(-1, input.read());
+    }
+}
@@ -0,0 +1,46 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ShellInputTest {
+    @TempDir
+    Path dir;
+
+    // Remembers being closed, which a ByteArrayInputStream on its own doesn't.
+    static class TrackedInput extends ByteArrayInputStream {
+        Boolean isClosed = false;
+
+        TrackedInput(String text) {
+            super(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            isClosed = true;
+        }
+    }
+
+    @Test
+    void parallelLeavesTheShellInputOpen() {
+        TrackedInput in = new TrackedInput("a\nb\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Shell shell = new Shell(dir.toFile(), in, new PrintStream(out, true, StandardCharsets.UTF_8),
+                new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8),
+                new HashMap<>(System.getenv()));
+
+        shell.runScript(new BufferedReader(new StringReader("parallel -j 1 echo\n")));
+
+        assertFalse(in.isClosed);
+        assertEquals("a\nb\n", out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// A script run through a Shell of its own, as a script file would be, with
+// whatever it printed. The environment is the test's own, plus `variables`.
+record ShellRun(int exitCode, String out, String err) {
+    static ShellRun run(File cwd, String script) {
+        return run(cwd, script, "", Map.of());
+    }
+
+    static ShellRun run(File cwd, String script, String stdin, Map<String, String> variables) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Map<String, String> environment = new HashMap<>(System.getenv());
+        environment.putAll(variables);
+        Shell shell = new Shell(cwd, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8),
+                environment);
+        int exitCode = shell.runScript(new BufferedReader(new StringReader(script)));
+        return new ShellRun(exitCode, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -21,4 +21,47 @@ set -e # Exit early if any commands fail
 #
 # - Edit this to change how your program runs locally
 # - Edit .codecrafters/run.sh to change how your program runs remotely
-exec java -jar /tmp/codecrafters-build-shell-java/codecrafters-shell.jar "$@"
+#
+# The shell starts from a class data sharing (AppCDS) archive: a training run
+# records the classes a typical session loads, and later starts map them from the
+# archive instead of loading and verifying each one. An archive is only valid for
+# the jar it was trained with, so every build gets its own copy of the jar, named
+# after its checksum. Many shells may be starting at once, so no file one of them
+# could be using is ever rewritten: the jar is linked into place, which fails if
+# it's already there, and the archive is trained under a temporary name and moved.
+# Copies from earlier builds are removed once the new jar is in place; shells
+# already running from them keep their open files.
+build_dir=/tmp/codecrafters-build-shell-java
+version=$(cksum < "$build_dir/codecrafters-shell.jar" | cut -d ' ' -f 1)
+jar="$build_dir/startup/codecrafters-shell-$version.jar"
+archive="$build_dir/startup/codecrafters-shell-$version.jsa"
+if [ ! -f "$jar" ]; then
+  mkdir -p "$build_dir/startup"
+  cp -p "$build_dir/codecrafters-shell.jar" "$jar.$$"
+  ln "$jar.$$" "$jar" 2>/dev/null || true
+  rm -f "$jar.$$"
+  find "$build_dir/startup" -maxdepth 1 -name 'codecrafters-shell-*' ! -name "codecrafters-shell-$version.*" \
+    -exec rm -f {} +
+fi
+if [ ! -f "$archive" ]; then
+  # The training session is run by the shell itself, so it only uses what the
+  # shell supports. A failed run is reported, and the shell starts without an
+  # archive.
+  status=0
+  java -XX:ArchiveClassesAtExit="$archive.$$" -Xlog:cds=off -Xlog:cds+dynamic=off -jar "$jar" -c '
+    greet() { echo "hello $1" | cat; }
+    for name in a b; do greet "$name" > /dev/null; done
+    dir=$(pwd) && export dir && unset dir
+    type cd ls > /dev/null; ls / | head -n 1 | wc -l > /dev/null 2> /dev/null
+    if test -d /; then cd / && pwd > /dev/null; fi
+  ' < /dev/null > "$archive.$$.log" 2>&1 || status=$?
+  if [ "$status" -eq 0 ] && [ -f "$archive.$$" ]; then
+    mv -f "$archive.$$" "$archive"
+  else
+    echo "your_program.sh: the AppCDS training run failed (exit status $status):" >&2
+    cat "$archive.$$.log" >&2
+    rm -f "$archive.$$"
+  fi
+  rm -f "$archive.$$.log"
+fi
+exec java -XX:SharedArchiveFile="$archive" -Xlog:cds=off -Xlog:cds+dynamic=off -jar "$jar" "$@"